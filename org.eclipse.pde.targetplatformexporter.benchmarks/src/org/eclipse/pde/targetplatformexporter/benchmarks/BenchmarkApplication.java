@@ -0,0 +1,38 @@
+package org.eclipse.pde.targetplatformexporter.benchmarks;
+
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks inside the running OSGi framework.
+ * <p>
+ * The benchmarks need the p2 services, so JMH can't fork new (plain) JVMs: the number of forks
+ * is always 0. All other JMH command line options are supported, e.g.
+ * <pre>
+ * eclipse -nosplash -application org.eclipse.pde.targetplatformexporter.benchmarks.benchmark
+ *     MirrorBenchmarks.keyCollection -p units=1000,50000 -rf json -rff result.json
+ * </pre>
+ */
+public class BenchmarkApplication implements IApplication {
+
+	@Override
+	public Object start(IApplicationContext context) throws Exception {
+		String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+		context.applicationRunning();
+
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.forks(0)
+				.build();
+		new Runner(options).run();
+		return EXIT_OK;
+	}
+
+	@Override
+	public void stop() {
+	}
+}
@@ -0,0 +1,26 @@
+package org.eclipse.pde.targetplatformexporter.benchmarks;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.pde.targetplatformexporter.ExportOptions;
+import org.eclipse.pde.targetplatformexporter.P2MirrorTool;
+
+/**
+ * Exposes the internal steps of the {@link P2MirrorTool} to the benchmarks.
+ */
+class BenchmarkMirrorTool extends P2MirrorTool {
+	private final Set<IInstallableUnit> installableUnitSet;
+
+	BenchmarkMirrorTool(Set<URI> repoURIs, Set<IInstallableUnit> installableUnitSet, String destFolder, ExportOptions options) {
+		super(repoURIs, installableUnitSet, destFolder, options);
+		this.installableUnitSet = installableUnitSet;
+	}
+
+	List<IArtifactKey> collectArtifactKeys() {
+		return getArtifactKeys(installableUnitSet);
+	}
+}
@@ -0,0 +1,201 @@
+package org.eclipse.pde.targetplatformexporter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.internal.repository.mirroring.Mirroring;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.pde.targetplatformexporter.ExportOptions;
+import org.eclipse.pde.targetplatformexporter.MirrorException;
+import org.eclipse.pde.targetplatformexporter.P2MirrorTool;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the hot paths of the {@link P2MirrorTool} against a generated local source
+ * repository. Every invocation writes into a new, empty destination repository with the
+ * caches and the incremental mode turned off, see {@link #createOptions()}. Only the
+ * benchmarks mirroring artifacts use a per invocation fixture, the fixture would dominate the
+ * timing of the microbenchmarks.
+ */
+@SuppressWarnings("restriction")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class MirrorBenchmarks {
+
+	@Param({"100", "1000", "10000", "50000"})
+	public int units;
+
+	@Param({"4096"})
+	public int artifactSize;
+
+	private IProvisioningAgent agent;
+	private SyntheticRepository source;
+	private File scratchFolder;
+
+	/**
+	 * Reports the transferred artifacts and bytes per time unit
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class TransferCounters {
+		public long artifacts;
+		public long bytes;
+	}
+
+	/**
+	 * Empty destination folder of a single invocation
+	 */
+	@State(Scope.Thread)
+	public static class Destination {
+		File folder;
+
+		@Setup(Level.Invocation)
+		public void create() throws IOException {
+			folder = SyntheticRepository.createTempFolder("destination"); //$NON-NLS-1$
+		}
+
+		@TearDown(Level.Invocation)
+		public void delete() throws IOException {
+			SyntheticRepository.removeRepository(SyntheticRepository.getAgent(), folder.toURI());
+			SyntheticRepository.deleteFolder(folder);
+		}
+	}
+
+	/**
+	 * Destination folders of the invocations of an iteration, created as subfolders without
+	 * a per invocation fixture and deleted after the iteration
+	 */
+	@State(Scope.Thread)
+	public static class Destinations {
+		private File folder;
+		private final List<URI> locations = new ArrayList<URI>();
+
+		@Setup(Level.Iteration)
+		public void create() throws IOException {
+			folder = SyntheticRepository.createTempFolder("destinations"); //$NON-NLS-1$
+		}
+
+		URI next() {
+			URI location = new File(folder, String.valueOf(locations.size())).toURI();
+			locations.add(location);
+			return location;
+		}
+
+		@TearDown(Level.Iteration)
+		public void delete() throws IOException {
+			IProvisioningAgent agent = SyntheticRepository.getAgent();
+			for (URI location : locations) {
+				SyntheticRepository.removeRepository(agent, location);
+			}
+			locations.clear();
+			SyntheticRepository.deleteFolder(folder);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void createSource() throws IOException, ProvisionException {
+		agent = SyntheticRepository.getAgent();
+		source = SyntheticRepository.create(agent, units, artifactSize);
+		// Destination of the key collection, nothing gets written into it
+		scratchFolder = SyntheticRepository.createTempFolder("scratch"); //$NON-NLS-1$
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteSource() throws IOException {
+		source.delete();
+		SyntheticRepository.deleteFolder(scratchFolder);
+	}
+
+	@Benchmark
+	public List<IArtifactKey> keyCollection() {
+		return createMirrorTool(scratchFolder).collectArtifactKeys();
+	}
+
+	@Benchmark
+	public IMetadataRepository metadataInsertion(Destinations destinations) throws ProvisionException {
+		IMetadataRepositoryManager manager = SyntheticRepository.getMetadataRepositoryManager(agent);
+		IMetadataRepository repository = manager.createRepository(destinations.next(), "Destination", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null); //$NON-NLS-1$
+		repository.addInstallableUnits(source.getInstallableUnits());
+		return repository;
+	}
+
+	@Benchmark
+	public MultiStatus artifactCopy(Destination destination, TransferCounters counters) throws ProvisionException {
+		IArtifactRepositoryManager manager = SyntheticRepository.getArtifactRepositoryManager(agent);
+		IArtifactRepository sourceRepository = manager.loadRepository(source.getURI(), null);
+		IArtifactRepository destinationRepository = manager.createRepository(destination.folder.toURI(), "Destination", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, null); //$NON-NLS-1$
+
+		List<IArtifactKey> keys = createMirrorTool(destination.folder).collectArtifactKeys();
+		Mirroring mirroring = new Mirroring(sourceRepository, destinationRepository, false);
+		mirroring.setValidate(false);
+		mirroring.setTransport((Transport) agent.getService(Transport.SERVICE_NAME));
+		mirroring.setArtifactKeys(keys.toArray(new IArtifactKey[keys.size()]));
+		MultiStatus status = mirroring.run(true, false);
+
+		counters.artifacts += keys.size();
+		counters.bytes += (long) keys.size() * artifactSize;
+		return status;
+	}
+
+	@Benchmark
+	public MultiStatus endToEndMirror(Destination destination, TransferCounters counters) throws MirrorException, InterruptedException {
+		P2MirrorTool mirrorTool = new P2MirrorTool(getSourceURIs(), source.getInstallableUnits(), destination.folder.getAbsolutePath(), createOptions());
+		MultiStatus status = mirrorTool.mirror(new NullProgressMonitor());
+
+		counters.artifacts += units;
+		counters.bytes += (long) units * artifactSize;
+		return status;
+	}
+
+	private BenchmarkMirrorTool createMirrorTool(File destination) {
+		return new BenchmarkMirrorTool(getSourceURIs(), source.getInstallableUnits(), destination.getAbsolutePath(), createOptions());
+	}
+
+	/**
+	 * The artifact and the repository cache would serve the later invocations from the state of
+	 * the earlier ones, the incremental mode (and with it the destination index) would skip
+	 * their work. Linked artifacts would skip the copy of the local source.
+	 */
+	private static ExportOptions createOptions() {
+		ExportOptions options = new ExportOptions();
+		options.setArtifactCache(false);
+		options.setLinkArtifacts(false);
+		options.setRepositoryCache(false);
+		options.setIncremental(false);
+		return options;
+	}
+
+	private Set<URI> getSourceURIs() {
+		return Collections.singleton(source.getURI());
+	}
+}
@@ -0,0 +1,166 @@
+package org.eclipse.pde.targetplatformexporter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+import org.eclipse.equinox.p2.metadata.MetadataFactory;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.IRunnableWithProgress;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Local file based p2 repository with generated IUs, each of them with a single artifact of
+ * random content.
+ */
+class SyntheticRepository {
+	private static final String ID_PREFIX = "benchmark.bundle."; //$NON-NLS-1$
+
+	private final IProvisioningAgent agent;
+	private final File location;
+	private final Set<IInstallableUnit> installableUnits = new HashSet<>();
+
+	private SyntheticRepository(IProvisioningAgent agent, File location) {
+		this.agent = agent;
+		this.location = location;
+	}
+
+	/**
+	 * Creates a new repository in a temporary folder
+	 *
+	 * @param units number of IUs (and artifacts)
+	 * @param artifactSize size of every artifact in bytes
+	 */
+	static SyntheticRepository create(IProvisioningAgent agent, int units, int artifactSize) throws IOException, ProvisionException {
+		SyntheticRepository repository = new SyntheticRepository(agent, createTempFolder("source")); //$NON-NLS-1$
+		repository.generate(units, artifactSize);
+		return repository;
+	}
+
+	private void generate(final int units, final int artifactSize) throws ProvisionException {
+		Map<String, String> properties = new HashMap<>();
+		properties.put(IRepository.PROP_COMPRESSED, "true"); //$NON-NLS-1$
+		IMetadataRepository metadataRepository = getMetadataRepositoryManager(agent).createRepository(getURI(), "Synthetic " + units, IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties); //$NON-NLS-1$
+		final IArtifactRepository artifactRepository = getArtifactRepositoryManager(agent).createRepository(getURI(), "Synthetic " + units, IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties); //$NON-NLS-1$
+
+		final byte[] content = new byte[artifactSize];
+		new Random(42).nextBytes(content);
+		IStatus status = artifactRepository.executeBatch(new IRunnableWithProgress() {
+			@Override
+			public void run(IProgressMonitor monitor) throws OperationCanceledException {
+				for (int i = 0; i < units; i++) {
+					String id = ID_PREFIX + i;
+					Version version = Version.createOSGi(1, 0, i % 100);
+					IArtifactKey key = artifactRepository.createArtifactKey("osgi.bundle", id, version); //$NON-NLS-1$
+					writeArtifact(artifactRepository, key, content);
+
+					InstallableUnitDescription description = new InstallableUnitDescription();
+					description.setId(id);
+					description.setVersion(version);
+					description.setCapabilities(new IProvidedCapability[] {MetadataFactory.createProvidedCapability(IInstallableUnit.NAMESPACE_IU_ID, id, version)});
+					description.setArtifacts(new IArtifactKey[] {key});
+					installableUnits.add(MetadataFactory.createInstallableUnit(description));
+				}
+			}
+		}, null);
+		if (status.getSeverity() == IStatus.ERROR) {
+			throw new ProvisionException(status);
+		}
+		metadataRepository.addInstallableUnits(installableUnits);
+	}
+
+	private static void writeArtifact(IArtifactRepository repository, IArtifactKey key, byte[] content) {
+		IArtifactDescriptor descriptor = repository.createArtifactDescriptor(key);
+		if (descriptor instanceof ArtifactDescriptor) {
+			((ArtifactDescriptor) descriptor).setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, String.valueOf(content.length));
+			((ArtifactDescriptor) descriptor).setProperty(IArtifactDescriptor.ARTIFACT_SIZE, String.valueOf(content.length));
+		}
+		try (OutputStream output = repository.getOutputStream(descriptor)) {
+			output.write(content);
+		} catch (IOException | ProvisionException e) {
+			throw new RuntimeException("Error writing artifact " + key, e);
+		}
+	}
+
+	URI getURI() {
+		return location.toURI();
+	}
+
+	Set<IInstallableUnit> getInstallableUnits() {
+		return installableUnits;
+	}
+
+	/**
+	 * Removes the repository from the repository managers and deletes it
+	 */
+	void delete() throws IOException {
+		removeRepository(agent, getURI());
+		deleteFolder(location);
+	}
+
+	static File createTempFolder(String prefix) throws IOException {
+		return Files.createTempDirectory("p2benchmark-" + prefix).toFile(); //$NON-NLS-1$
+	}
+
+	static void removeRepository(IProvisioningAgent agent, URI uri) {
+		getMetadataRepositoryManager(agent).removeRepository(uri);
+		getArtifactRepositoryManager(agent).removeRepository(uri);
+	}
+
+	static void deleteFolder(File folder) throws IOException {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				deleteFolder(file);
+			}
+		}
+		Files.deleteIfExists(folder.toPath());
+	}
+
+	static IProvisioningAgent getAgent() {
+		BundleContext context = FrameworkUtil.getBundle(SyntheticRepository.class).getBundleContext();
+		ServiceReference<IProvisioningAgent> reference = context.getServiceReference(IProvisioningAgent.class);
+		if (reference == null) {
+			throw new IllegalStateException("No provisioning agent is available"); //$NON-NLS-1$
+		}
+		return context.getService(reference);
+	}
+
+	static IMetadataRepositoryManager getMetadataRepositoryManager(IProvisioningAgent agent) {
+		return (IMetadataRepositoryManager) agent.getService(IMetadataRepositoryManager.SERVICE_NAME);
+	}
+
+	static IArtifactRepositoryManager getArtifactRepositoryManager(IProvisioningAgent agent) {
+		return (IArtifactRepositoryManager) agent.getService(IArtifactRepositoryManager.SERVICE_NAME);
+	}
+
+	@Override
+	public String toString() {
+		return location + " (" + installableUnits.size() + " IUs)"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,138 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the transfers of the {@link TransferScheduler} against a local HTTP server standing in
+ * for a remote repository.
+ */
+public class TransferSchedulerTest {
+	private static final String HOST = "127.0.0.1"; //$NON-NLS-1$
+	private static final int ARTIFACT_SIZE = 32 * 1024;
+
+	private HttpServer server;
+	private TransferScheduler scheduler;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(HOST), 0), 0);
+		server.createContext("/artifact", new HttpHandler() { //$NON-NLS-1$
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, ARTIFACT_SIZE);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(new byte[ARTIFACT_SIZE]);
+				}
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		server.stop(0);
+	}
+
+	@Test
+	public void testBandwidthCap() throws Exception {
+		// 64 KB/s, every artifact takes half a second
+		scheduler = createScheduler(2, HOST + "=2:64"); //$NON-NLS-1$
+		int transfers = 6;
+		long start = System.nanoTime();
+		for (int i = 0; i < transfers; i++) {
+			scheduler.submit(HOST, ARTIFACT_SIZE, createDownload());
+		}
+		waitFor(transfers);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		// The first two transfers start right away, the other four wait for the cap
+		assertTrue("Finished after " + elapsed + " ms", elapsed >= 1900); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testCappedHostDoesNotBlockOtherHosts() throws Exception {
+		// 16 KB/s, every artifact takes two seconds
+		scheduler = createScheduler(2, HOST + "=2:16"); //$NON-NLS-1$
+		for (int i = 0; i < 4; i++) {
+			scheduler.submit(HOST, ARTIFACT_SIZE, createDownload());
+		}
+		final CountDownLatch localTransfers = new CountDownLatch(4);
+		for (int i = 0; i < 4; i++) {
+			scheduler.submit(null, 0, new Callable<MultiStatus>() {
+				@Override
+				public MultiStatus call() throws Exception {
+					localTransfers.countDown();
+					return new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Local transfer", null); //$NON-NLS-1$
+				}
+			});
+		}
+
+		// The capped host waits for its cap without occupying the two threads
+		assertTrue(localTransfers.await(1, TimeUnit.SECONDS));
+		waitFor(8);
+	}
+
+	private TransferScheduler createScheduler(int threads, String hosts) {
+		ExportOptions options = new ExportOptions();
+		options.setMirrorThreads(threads);
+		options.setHosts(hosts);
+		return new TransferScheduler(options);
+	}
+
+	private Callable<MultiStatus> createDownload() {
+		final URL url;
+		try {
+			url = new URL("http://" + HOST + ':' + server.getAddress().getPort() + "/artifact"); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return new Callable<MultiStatus>() {
+			@Override
+			public MultiStatus call() throws Exception {
+				long bytes = 0;
+				try (InputStream in = url.openStream()) {
+					byte[] buffer = new byte[8 * 1024];
+					int read;
+					while ((read = in.read(buffer)) >= 0) {
+						bytes += read;
+					}
+				}
+				scheduler.transferred(HOST, bytes);
+				return new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Downloaded " + bytes + " bytes", null); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		};
+	}
+
+	private void waitFor(int transfers) throws Exception {
+		for (int i = 0; i < transfers; i++) {
+			Future<MultiStatus> future = scheduler.poll(30, TimeUnit.SECONDS);
+			assertTrue("Transfer " + i + " timed out", future != null); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(IStatus.OK, future.get().getSeverity());
+		}
+	}
+}
@@ -10,15 +10,18 @@
  *******************************************************************************/
 package org.eclipse.pde.targetplatformexporter;
 
-import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Plugin;
+import org.eclipse.core.runtime.Status;
 import org.osgi.framework.BundleContext;
 
 /**
- * The activator class controls the plug-in life cycle
+ * The activator class controls the plug-in life cycle.
+ * It doesn't depend on the UI, so the headless {@link ExportApplication} doesn't activate the workbench.
  *
  * @author Boris Brodski
  */
-public class Activator extends AbstractUIPlugin {
+public class Activator extends Plugin {
 
 	// The plug-in ID
 	public static final String PLUGIN_ID = "org.eclipse.pde.targetplatformexporter"; //$NON-NLS-1$
@@ -34,7 +37,7 @@ public class Activator extends AbstractUIPlugin {
 
 	/*
 	 * (non-Javadoc)
-	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#start(org.osgi.framework.BundleContext)
+	 * @see org.eclipse.core.runtime.Plugin#start(org.osgi.framework.BundleContext)
 	 */
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
@@ -43,9 +46,11 @@ public class Activator extends AbstractUIPlugin {
 
 	/*
 	 * (non-Javadoc)
-	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
+	 * @see org.eclipse.core.runtime.Plugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		RepositoryCache.disposeDefault();
+		P2MirrorTool.disposeAgent();
 		plugin = null;
 		super.stop(context);
 	}
@@ -63,4 +68,8 @@ public class Activator extends AbstractUIPlugin {
 		return plugin.getBundle().getBundleContext();
 	}
 
+	public static void log(Throwable throwable) {
+		plugin.getLog().log(new Status(IStatus.ERROR, PLUGIN_ID, throwable.getMessage(), throwable));
+	}
+
 }
@@ -0,0 +1,62 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+
+/**
+ * Set of unique artifact keys.
+ * <p>
+ * The index keeps own copies of the keys with interned classifiers, ids and versions, so the
+ * keys don't hold the IUs and the strings shared by many keys are stored only once. Counts the
+ * duplicates.
+ */
+@SuppressWarnings("restriction")
+public class ArtifactKeyIndex {
+	private final Set<IArtifactKey> keys = new HashSet<>();
+	private final Interner interner = new Interner();
+	private int duplicates;
+
+	/**
+	 * @return <code>true</code> - the key is new
+	 */
+	public boolean add(IArtifactKey key) {
+		if (keys.contains(key)) {
+			duplicates++;
+			return false;
+		}
+		keys.add(new ArtifactKey(interner.intern(key.getClassifier()), interner.intern(key.getId()), interner.intern(key.getVersion())));
+		return true;
+	}
+
+	public boolean contains(IArtifactKey key) {
+		return keys.contains(key);
+	}
+
+	/**
+	 * @return number of the unique keys
+	 */
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * @return number of the added keys, that were already in the index
+	 */
+	public int getDuplicates() {
+		return duplicates;
+	}
+
+	public List<IArtifactKey> getKeys() {
+		return new ArrayList<>(keys);
+	}
+
+	@Override
+	public String toString() {
+		return keys.size() + " unique artifact keys, " + duplicates + " duplicates"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
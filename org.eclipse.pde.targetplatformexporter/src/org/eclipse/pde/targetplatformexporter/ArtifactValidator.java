@@ -0,0 +1,164 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.repository.artifact.ArtifactKeyQuery;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+
+/**
+ * Validates the checksums and the sizes of the artifacts of a simple repository against the
+ * properties of their descriptors.
+ */
+@SuppressWarnings("restriction")
+public class ArtifactValidator {
+	/**
+	 * Descriptor properties with checksums, in the order of preference
+	 */
+	static final String[] CHECKSUM_PROPERTIES = { "download.checksum.sha-256", IArtifactDescriptor.DOWNLOAD_MD5 }; //$NON-NLS-1$
+	private static final String[] CHECKSUM_ALGORITHMS = { "SHA-256", "MD5" }; //$NON-NLS-1$ //$NON-NLS-2$
+	private static final long POLL_INTERVAL = 100;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private ArtifactValidator() {
+	}
+
+	/**
+	 * @return <code>OK</code> - the artifact matches its descriptor or the descriptor has
+	 *         neither a checksum nor a size. <code>ERROR</code> - mismatch
+	 */
+	public static IStatus validate(SimpleArtifactRepository repository, IArtifactDescriptor descriptor) {
+		return validate(descriptor, repository.getArtifactFile(descriptor));
+	}
+
+	/**
+	 * @param file artifact file, e.g. in the {@link LocalArtifactCache}
+	 * @see #validate(SimpleArtifactRepository, IArtifactDescriptor)
+	 */
+	static IStatus validate(IArtifactDescriptor descriptor, File file) {
+		if (file == null || !file.isFile()) {
+			// Folder based artifacts are not validated
+			return Status.OK_STATUS;
+		}
+		String size = descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_SIZE);
+		if (size != null && !size.equals(String.valueOf(file.length()))) {
+			return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Size mismatch of " + descriptor.getArtifactKey() + ": expected " + size + ", found " + file.length());
+		}
+		for (int i = 0; i < CHECKSUM_PROPERTIES.length; i++) {
+			String checksum = descriptor.getProperty(CHECKSUM_PROPERTIES[i]);
+			if (checksum == null) {
+				continue;
+			}
+			try {
+				String actual = computeChecksum(file, CHECKSUM_ALGORITHMS[i]);
+				if (!actual.equalsIgnoreCase(checksum)) {
+					return new Status(IStatus.ERROR, Activator.PLUGIN_ID, CHECKSUM_ALGORITHMS[i] + " mismatch of " + descriptor.getArtifactKey() + ": expected " + checksum + ", found " + actual);
+				}
+			} catch (IOException e) {
+				return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Error reading " + file + ": " + e.getMessage(), e);
+			}
+			return Status.OK_STATUS;
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Validates all artifacts of the repository concurrently.
+	 *
+	 * @return status with a child for every mismatch
+	 */
+	public static MultiStatus verify(final SimpleArtifactRepository repository, int threads, IProgressMonitor monitor) throws InterruptedException {
+		List<IArtifactDescriptor> descriptors = new ArrayList<>();
+		for (IArtifactKey key : repository.query(ArtifactKeyQuery.ALL_KEYS, null).toUnmodifiableSet()) {
+			for (IArtifactDescriptor descriptor : repository.getArtifactDescriptors(key)) {
+				descriptors.add(descriptor);
+			}
+		}
+
+		SubMonitor subMonitor = SubMonitor.convert(monitor, "Validating " + descriptors.size() + " artifacts", descriptors.size());
+		MultiStatus status = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Validated " + descriptors.size() + " artifacts", null);
+		if (descriptors.isEmpty()) {
+			return status;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, descriptors.size()), new NamedThreadFactory("Artifact validation")); //$NON-NLS-1$
+		try {
+			CompletionService<IStatus> completionService = new ExecutorCompletionService<>(executor);
+			for (final IArtifactDescriptor descriptor : descriptors) {
+				completionService.submit(new Callable<IStatus>() {
+					@Override
+					public IStatus call() throws Exception {
+						return validate(repository, descriptor);
+					}
+				});
+			}
+
+			int done = 0;
+			while (done < descriptors.size()) {
+				if (subMonitor.isCanceled()) {
+					throw new InterruptedException();
+				}
+				Future<IStatus> future = completionService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if (future == null) {
+					continue;
+				}
+				done++;
+				try {
+					IStatus result = future.get();
+					if (!result.isOK()) {
+						status.add(result);
+					}
+				} catch (ExecutionException e) {
+					status.add(new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Error validating artifact: " + e.getCause(), e.getCause()));
+				}
+				subMonitor.worked(1);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return status;
+	}
+
+	private static String computeChecksum(File file, String algorithm) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		StringBuilder checksum = new StringBuilder();
+		for (byte b : digest.digest()) {
+			checksum.append(String.format("%02x", b)); //$NON-NLS-1$
+		}
+		return checksum.toString();
+	}
+}
@@ -0,0 +1,35 @@
+package org.eclipse.pde.targetplatformexporter;
+
+/**
+ * Output format of the indexes (<code>content.xml</code> and <code>artifacts.xml</code>) of the
+ * destination repository.
+ */
+public enum Compression {
+	/**
+	 * Plain <code>content.xml</code> and <code>artifacts.xml</code>
+	 */
+	NONE,
+
+	/**
+	 * <code>content.jar</code> and <code>artifacts.jar</code>, readable by all p2 versions
+	 */
+	JAR,
+
+	/**
+	 * <code>content.xml.xz</code> and <code>artifacts.xml.xz</code> with a <code>p2.index</code>.
+	 * The plain XML files are kept for p2 versions without XZ support.
+	 */
+	XZ;
+
+	/**
+	 * @return <code>null</code> - unknown name
+	 */
+	public static Compression fromString(String name) {
+		for (Compression compression : values()) {
+			if (compression.name().equalsIgnoreCase(name)) {
+				return compression;
+			}
+		}
+		return null;
+	}
+}
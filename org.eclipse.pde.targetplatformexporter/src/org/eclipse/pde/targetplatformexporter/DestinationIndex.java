@@ -0,0 +1,158 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+
+/**
+ * Compact sidecar index of the artifact keys and the IUs of the destination repository, so the
+ * incremental checks don't need to parse the repository.
+ * <p>
+ * The file holds a header (magic, fingerprint of the repository indexes, count) and the sorted
+ * 64-bit hashes of the keys and the IUs. The hashes are read into an array and searched
+ * binary, no file handle is kept open, so the next export can replace the file. The index is
+ * stale, as soon as the <code>content</code> or the <code>artifacts</code> index of the
+ * repository changes. With 64-bit hashes a false match is negligible for repositories with
+ * millions of entries.
+ */
+class DestinationIndex {
+	static final String FILE_NAME = ".destination-index"; //$NON-NLS-1$
+	private static final long MAGIC = 0x5450455844495831L; // TPEXDIX1
+	private static final int HEADER_SIZE = 3 * Long.BYTES;
+	private static final String[] REPOSITORY_INDEXES = { "content.jar", "content.xml", "content.xml.xz", "artifacts.jar", "artifacts.xml", "artifacts.xml.xz" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final long[] hashes;
+
+	private DestinationIndex(long[] hashes) {
+		this.hashes = hashes;
+	}
+
+	/**
+	 * @return index of the repository in the folder or <code>null</code>, if there is no index
+	 *         or it is stale
+	 */
+	static DestinationIndex open(File folder) {
+		File file = new File(folder, FILE_NAME);
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = read(channel, HEADER_SIZE);
+			long magic = header.getLong();
+			long fingerprint = header.getLong();
+			long count = header.getLong();
+			if (magic != MAGIC || fingerprint != computeFingerprint(folder) || count != (channel.size() - HEADER_SIZE) / Long.BYTES || count > Integer.MAX_VALUE / Long.BYTES) {
+				return null;
+			}
+			long[] hashes = new long[(int) count];
+			read(channel, hashes.length * Long.BYTES).asLongBuffer().get(hashes);
+			return new DestinationIndex(hashes);
+		} catch (IOException e) {
+			Activator.log(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the index of the repository in the folder. Must be called after the last save of
+	 * the repository.
+	 */
+	static void write(File folder, Collection<IArtifactKey> keys, Collection<IInstallableUnit> units) throws IOException {
+		long[] values = new long[keys.size() + units.size()];
+		int i = 0;
+		for (IArtifactKey key : keys) {
+			values[i++] = hash(key);
+		}
+		for (IInstallableUnit unit : units) {
+			values[i++] = hash(unit);
+		}
+		Arrays.sort(values);
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + values.length * Long.BYTES);
+		buffer.putLong(MAGIC).putLong(computeFingerprint(folder)).putLong(values.length);
+		buffer.asLongBuffer().put(values);
+		File file = new File(folder, FILE_NAME);
+		File tempFile = new File(folder, FILE_NAME + ".tmp"); //$NON-NLS-1$
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static ByteBuffer read(FileChannel channel, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("Unexpected end of " + FILE_NAME);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	boolean containsArtifact(IArtifactKey key) {
+		return contains(hash(key));
+	}
+
+	boolean containsUnit(IInstallableUnit unit) {
+		return contains(hash(unit));
+	}
+
+	/**
+	 * @return number of the indexed keys and IUs
+	 */
+	int size() {
+		return hashes.length;
+	}
+
+	private boolean contains(long hash) {
+		return Arrays.binarySearch(hashes, hash) >= 0;
+	}
+
+	private static long hash(IArtifactKey key) {
+		return hash("a/" + key.getClassifier() + '/' + key.getId() + '/' + key.getVersion()); //$NON-NLS-1$
+	}
+
+	private static long hash(IInstallableUnit unit) {
+		return hash("u/" + unit.getId() + '/' + unit.getVersion()); //$NON-NLS-1$
+	}
+
+	/**
+	 * 64-bit FNV-1a
+	 */
+	private static long hash(String string) {
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < string.length(); i++) {
+			hash ^= string.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return hash of the names, sizes and modification times of the repository indexes
+	 */
+	private static long computeFingerprint(File folder) {
+		StringBuilder fingerprint = new StringBuilder();
+		for (String name : REPOSITORY_INDEXES) {
+			File file = new File(folder, name);
+			if (file.isFile()) {
+				fingerprint.append(name).append(':').append(file.length()).append(':').append(file.lastModified()).append(';');
+			}
+		}
+		return hash(fingerprint.toString());
+	}
+}
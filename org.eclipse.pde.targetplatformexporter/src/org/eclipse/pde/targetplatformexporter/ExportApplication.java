@@ -0,0 +1,229 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.pde.core.target.ITargetHandle;
+import org.eclipse.pde.core.target.ITargetPlatformService;
+import org.eclipse.pde.targetplatformexporter.wizards.ExportConfiguration;
+
+/**
+ * Headless batch export of target definitions. Doesn't require a workbench or a display.
+ * <p>
+ * Usage:
+ * <pre>
+ * eclipse -nosplash -application org.eclipse.pde.targetplatformexporter.export
+ *     -target &lt;file.target&gt; [-target &lt;file.target&gt; ...]
+ *     [-config &lt;os/ws/arch&gt; ...]
+ *     -destination &lt;folder&gt;
+ *     [-plugins] [-resolveOnce] [-noTargetGraph] [-full] [-noResolutionCache] [-noRepositoryCache]
+ *     [-resolveThreads &lt;n&gt;] [-mirrorThreads &lt;n&gt;] [-metadataChunkSize &lt;n&gt;]
+ *     [-exportJobs &lt;n&gt;] [-artifactCache &lt;folder&gt;] [-noArtifactCache]
+ *     [-compression none|jar|xz] [-validate] [-repositoryLoadTimeout &lt;seconds&gt;]
+ *     [-hostConnections &lt;n&gt;] [-hosts &lt;host=connections[:KB/s],...&gt;]
+ *     [-baseline &lt;folder|URI&gt;]
+ *
+ * eclipse -nosplash -application org.eclipse.pde.targetplatformexporter.export
+ *     -verify -destination &lt;folder&gt; [-mirrorThreads &lt;n&gt;]
+ * </pre>
+ * Without <code>-config</code> the configuration of the running platform is exported.
+ * <code>-verify</code> validates the checksums of the artifacts of an exported p2 repository
+ * without exporting anything. <code>-baseline</code> exports only the difference to a previous
+ * export, see {@link ExportOptions#getBaseline()}.
+ */
+public class ExportApplication implements IApplication {
+	private static final Integer EXIT_ERROR = Integer.valueOf(1);
+
+	private final List<String> targetFiles = new ArrayList<>();
+	private final List<ExportConfiguration> configurations = new ArrayList<>();
+	private final ExportOptions options = new ExportOptions();
+	private String destination;
+	private boolean p2Mirror = true;
+	private boolean verify;
+
+	/**
+	 * Prints the subtasks to the standard output
+	 */
+	private static class ConsoleProgressMonitor extends NullProgressMonitor {
+		private String lastMessage;
+
+		@Override
+		public void beginTask(String name, int totalWork) {
+			print(name);
+		}
+
+		@Override
+		public void setTaskName(String name) {
+			print(name);
+		}
+
+		@Override
+		public void subTask(String name) {
+			print(name);
+		}
+
+		private void print(String message) {
+			if (message != null && message.length() > 0 && !message.equals(lastMessage)) {
+				lastMessage = message;
+				System.out.println(message);
+			}
+		}
+	}
+
+	@Override
+	public Object start(IApplicationContext context) throws Exception {
+		String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+		try {
+			parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			return EXIT_ERROR;
+		}
+		context.applicationRunning();
+
+		try {
+			if (verify) {
+				MultiStatus status = new P2MirrorTool(destination, options).verify(new ConsoleProgressMonitor());
+				printStatus(status, "");
+				return status.getSeverity() > IStatus.WARNING ? EXIT_ERROR : EXIT_OK;
+			}
+
+			ITargetPlatformService service = TargetResolver.getTargetPlatformService();
+			List<ITargetHandle> targetHandles = new ArrayList<>();
+			for (String targetFile : targetFiles) {
+				targetHandles.add(service.getTarget(new File(targetFile).getAbsoluteFile().toURI()));
+			}
+
+			TargetPlatformExporter exporter = new TargetPlatformExporter(targetHandles, configurations, destination, options);
+			exporter.setP2Mirror(p2Mirror);
+			MultiStatus status = exporter.export(new ConsoleProgressMonitor());
+			printStatus(status, "");
+			return status.getSeverity() > IStatus.WARNING ? EXIT_ERROR : EXIT_OK;
+		} catch (CoreException e) {
+			printStatus(e.getStatus(), "");
+		} catch (MirrorException e) {
+			System.err.println("Error: " + e.getMessage());
+		} catch (InterruptedException e) {
+			System.err.println("Export canceled");
+		}
+		return EXIT_ERROR;
+	}
+
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if ("-target".equals(arg)) { //$NON-NLS-1$
+				targetFiles.add(getValue(args, ++i, arg));
+			} else if ("-config".equals(arg)) { //$NON-NLS-1$
+				String value = getValue(args, ++i, arg);
+				ExportConfiguration configuration = ExportConfiguration.fromString(value);
+				if (configuration == null) {
+					throw new IllegalArgumentException("Invalid configuration '" + value + "', expected os/ws/arch");
+				}
+				configurations.add(configuration);
+			} else if ("-destination".equals(arg)) { //$NON-NLS-1$
+				destination = getValue(args, ++i, arg);
+			} else if ("-plugins".equals(arg)) { //$NON-NLS-1$
+				p2Mirror = false;
+			} else if ("-resolveOnce".equals(arg)) { //$NON-NLS-1$
+				options.setResolveOnce(true);
+			} else if ("-noTargetGraph".equals(arg)) { //$NON-NLS-1$
+				options.setTargetGraph(false);
+			} else if ("-full".equals(arg)) { //$NON-NLS-1$
+				options.setIncremental(false);
+			} else if ("-noResolutionCache".equals(arg)) { //$NON-NLS-1$
+				options.setResolutionCache(false);
+			} else if ("-noRepositoryCache".equals(arg)) { //$NON-NLS-1$
+				options.setRepositoryCache(false);
+			} else if ("-artifactCache".equals(arg)) { //$NON-NLS-1$
+				options.setArtifactCacheDirectory(getValue(args, ++i, arg));
+			} else if ("-compression".equals(arg)) { //$NON-NLS-1$
+				String value = getValue(args, ++i, arg);
+				Compression compression = Compression.fromString(value);
+				if (compression == null) {
+					throw new IllegalArgumentException("Invalid compression '" + value + "', expected none, jar or xz");
+				}
+				options.setCompression(compression);
+			} else if ("-baseline".equals(arg)) { //$NON-NLS-1$
+				options.setBaseline(getValue(args, ++i, arg));
+			} else if ("-validate".equals(arg)) { //$NON-NLS-1$
+				options.setValidate(true);
+			} else if ("-verify".equals(arg)) { //$NON-NLS-1$
+				verify = true;
+			} else if ("-noArtifactCache".equals(arg)) { //$NON-NLS-1$
+				options.setArtifactCache(false);
+			} else if ("-resolveThreads".equals(arg)) { //$NON-NLS-1$
+				options.setResolveThreads(getIntValue(args, ++i, arg));
+			} else if ("-mirrorThreads".equals(arg)) { //$NON-NLS-1$
+				options.setMirrorThreads(getIntValue(args, ++i, arg));
+			} else if ("-hostConnections".equals(arg)) { //$NON-NLS-1$
+				options.setHostConnections(getIntValue(args, ++i, arg));
+			} else if ("-hosts".equals(arg)) { //$NON-NLS-1$
+				options.setHosts(getValue(args, ++i, arg));
+			} else if ("-metadataChunkSize".equals(arg)) { //$NON-NLS-1$
+				options.setMetadataChunkSize(getIntValue(args, ++i, arg));
+			} else if ("-exportJobs".equals(arg)) { //$NON-NLS-1$
+				options.setExportJobs(getIntValue(args, ++i, arg));
+			} else if ("-repositoryLoadTimeout".equals(arg)) { //$NON-NLS-1$
+				options.setRepositoryLoadTimeout(getIntValue(args, ++i, arg));
+			} else {
+				throw new IllegalArgumentException("Unknown argument '" + arg + "'");
+			}
+		}
+		if (targetFiles.isEmpty() && !verify) {
+			throw new IllegalArgumentException("Specify at least one target file");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("Specify the destination folder");
+		}
+		if (configurations.isEmpty()) {
+			configurations.add(ExportConfiguration.getDefault());
+		}
+	}
+
+	private static String getValue(String[] args, int index, String arg) {
+		if (index >= args.length) {
+			throw new IllegalArgumentException("Missing value of " + arg);
+		}
+		return args[index];
+	}
+
+	private static int getIntValue(String[] args, int index, String arg) {
+		String value = getValue(args, index, arg);
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number '" + value + "' of " + arg);
+		}
+	}
+
+	private static void printUsage() {
+		System.err.println("Arguments: -target <file.target> [-target ...] [-config <os/ws/arch> ...] -destination <folder>"
+				+ " [-plugins] [-resolveOnce] [-noTargetGraph] [-full] [-noResolutionCache] [-noRepositoryCache] [-resolveThreads <n>] [-mirrorThreads <n>]"
+				+ " [-metadataChunkSize <n>] [-exportJobs <n>] [-artifactCache <folder>] [-noArtifactCache]"
+				+ " [-compression none|jar|xz] [-validate] [-repositoryLoadTimeout <seconds>]"
+				+ " [-hostConnections <n>] [-hosts <host=connections[:KB/s],...>] [-baseline <folder|URI>]");
+		System.err.println("       -verify -destination <folder> [-mirrorThreads <n>]");
+	}
+
+	private static void printStatus(IStatus status, String indent) {
+		if (status.getSeverity() != IStatus.OK && status.getMessage() != null && status.getMessage().length() > 0) {
+			(status.getSeverity() > IStatus.WARNING ? System.err : System.out).println(indent + status.getMessage());
+		}
+		for (IStatus child : status.getChildren()) {
+			printStatus(child, indent + "  "); //$NON-NLS-1$
+		}
+	}
+
+	@Override
+	public void stop() {
+	}
+}
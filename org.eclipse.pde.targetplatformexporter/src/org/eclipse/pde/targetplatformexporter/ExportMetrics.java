@@ -0,0 +1,138 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread safe collector of the timings and the counters of an export run. Written as a JSON
+ * report into the destination folder.
+ * <p>
+ * Phase durations are summed up over all threads, so the durations of concurrent phases may
+ * exceed the total duration of the run.
+ */
+public class ExportMetrics {
+	public static final String REPORT_FILE = "export-metrics.json"; //$NON-NLS-1$
+
+	public static final String PHASE_RESOLVE = "resolve"; //$NON-NLS-1$
+	public static final String PHASE_IU_QUERY = "iuQuery"; //$NON-NLS-1$
+	public static final String PHASE_REPOSITORY_LOAD = "repositoryLoad"; //$NON-NLS-1$
+	public static final String PHASE_ARTIFACT_TRANSFER = "artifactTransfer"; //$NON-NLS-1$
+	public static final String PHASE_METADATA_WRITE = "metadataWrite"; //$NON-NLS-1$
+	public static final String PHASE_COMPRESSION = "compression"; //$NON-NLS-1$
+	public static final String PHASE_VALIDATION = "validation"; //$NON-NLS-1$
+	public static final String PHASE_PLUGIN_EXPORT = "pluginExport"; //$NON-NLS-1$
+
+	public static final String COUNTER_RESOLUTIONS = "resolutions"; //$NON-NLS-1$
+	public static final String COUNTER_RESOLUTION_CACHE_HITS = "resolutionCacheHits"; //$NON-NLS-1$
+	public static final String COUNTER_UNITS = "units"; //$NON-NLS-1$
+	public static final String COUNTER_ARTIFACTS_MIRRORED = "artifactsMirrored"; //$NON-NLS-1$
+	public static final String COUNTER_ARTIFACTS_SKIPPED = "artifactsSkipped"; //$NON-NLS-1$
+	public static final String COUNTER_ARTIFACT_CACHE_HITS = "artifactCacheHits"; //$NON-NLS-1$
+	public static final String COUNTER_ARTIFACTS_COPIED_LOCALLY = "artifactsCopiedLocally"; //$NON-NLS-1$
+	public static final String COUNTER_ARTIFACTS_INVALID = "artifactsInvalid"; //$NON-NLS-1$
+	public static final String COUNTER_BYTES_TRANSFERRED = "bytesTransferred"; //$NON-NLS-1$
+
+	private final long startTime = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+	private final Map<String, long[]> phases = new TreeMap<>();
+	private final Map<String, Long> counters = new TreeMap<>();
+	private final Map<String, long[]> repositories = new TreeMap<>();
+
+	/**
+	 * @return start time to pass to {@link #end(String, long)}
+	 */
+	public long begin() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Adds the time elapsed since {@link #begin()} to the phase
+	 */
+	public void end(String phase, long begin) {
+		add(phases, phase, System.nanoTime() - begin);
+	}
+
+	/**
+	 * Adds the time elapsed since {@link #begin()} to the load latency of the repository
+	 */
+	public void repositoryLoaded(URI location, long begin) {
+		long nanos = System.nanoTime() - begin;
+		add(phases, PHASE_REPOSITORY_LOAD, nanos);
+		add(repositories, location.toString(), nanos);
+	}
+
+	public synchronized void increment(String counter, long value) {
+		Long current = counters.get(counter);
+		counters.put(counter, Long.valueOf(current != null ? current.longValue() + value : value));
+	}
+
+	public synchronized long getCounter(String counter) {
+		Long value = counters.get(counter);
+		return value != null ? value.longValue() : 0;
+	}
+
+	private synchronized void add(Map<String, long[]> map, String name, long nanos) {
+		long[] value = map.get(name);
+		if (value == null) {
+			value = new long[2];
+			map.put(name, value);
+		}
+		value[0]++;
+		value[1] += nanos;
+	}
+
+	/**
+	 * Writes the JSON report
+	 */
+	public synchronized void write(File file) throws IOException {
+		file.getParentFile().mkdirs();
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("{\n"); //$NON-NLS-1$
+			writer.write("  \"startTime\": " + startTime + ",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			writer.write("  \"durationMillis\": " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + ",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			writer.write("  \"phases\": "); //$NON-NLS-1$
+			writeTimings(writer, phases);
+			writer.write(",\n  \"counters\": {"); //$NON-NLS-1$
+			String separator = "\n"; //$NON-NLS-1$
+			for (Map.Entry<String, Long> counter : counters.entrySet()) {
+				writer.write(separator + "    " + quote(counter.getKey()) + ": " + counter.getValue()); //$NON-NLS-1$ //$NON-NLS-2$
+				separator = ",\n"; //$NON-NLS-1$
+			}
+			writer.write("\n  },\n  \"repositories\": "); //$NON-NLS-1$
+			writeTimings(writer, repositories);
+			writer.write("\n}\n"); //$NON-NLS-1$
+		}
+	}
+
+	private static void writeTimings(BufferedWriter writer, Map<String, long[]> timings) throws IOException {
+		writer.write("{"); //$NON-NLS-1$
+		String separator = "\n"; //$NON-NLS-1$
+		for (Map.Entry<String, long[]> timing : timings.entrySet()) {
+			writer.write(separator + "    " + quote(timing.getKey()) + ": { \"count\": " + timing.getValue()[0] //$NON-NLS-1$ //$NON-NLS-2$
+					+ ", \"millis\": " + TimeUnit.NANOSECONDS.toMillis(timing.getValue()[1]) + " }"); //$NON-NLS-1$ //$NON-NLS-2$
+			separator = ",\n"; //$NON-NLS-1$
+		}
+		writer.write("\n  }"); //$NON-NLS-1$
+	}
+
+	private static String quote(String string) {
+		StringBuilder builder = new StringBuilder("\""); //$NON-NLS-1$
+		for (char c : string.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < 0x20) {
+				builder.append(String.format("\\u%04x", Integer.valueOf(c))); //$NON-NLS-1$
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+}
@@ -0,0 +1,321 @@
+package org.eclipse.pde.targetplatformexporter;
+
+/**
+ * Tuning options of a target platform export.
+ * <p>
+ * Every option has a default value, that can be overridden with a system property
+ * <code>targetplatformexporter.&lt;option name&gt;</code>, e.g.
+ * <code>-Dtargetplatformexporter.resolveThreads=8</code>.
+ */
+public class ExportOptions {
+	public static final String PROPERTY_PREFIX = "targetplatformexporter."; //$NON-NLS-1$
+
+	private int resolveThreads = getInteger("resolveThreads", Math.min(4, Runtime.getRuntime().availableProcessors())); //$NON-NLS-1$
+	private boolean resolveOnce = getBoolean("resolveOnce"); //$NON-NLS-1$
+	private boolean targetGraph = getBoolean("targetGraph", true); //$NON-NLS-1$
+	private int mirrorThreads = getInteger("mirrorThreads", 4); //$NON-NLS-1$
+	private int hostConnections = getInteger("hostConnections", 4); //$NON-NLS-1$
+	private String hosts = System.getProperty(PROPERTY_PREFIX + "hosts"); //$NON-NLS-1$
+	private boolean incremental = getBoolean("incremental", true); //$NON-NLS-1$
+	private boolean resolutionCache = getBoolean("resolutionCache", true); //$NON-NLS-1$
+	private int resolutionCacheSize = getInteger("resolutionCacheSize", 100); //$NON-NLS-1$
+	private int metadataChunkSize = getInteger("metadataChunkSize", 1000); //$NON-NLS-1$
+	private boolean repositoryCache = getBoolean("repositoryCache", true); //$NON-NLS-1$
+	private int repositoryCacheSize = getInteger("repositoryCacheSize", 32); //$NON-NLS-1$
+	private int repositoryCacheTimeout = getInteger("repositoryCacheTimeout", 1800); //$NON-NLS-1$
+	private int repositoryLoadThreads = getInteger("repositoryLoadThreads", 8); //$NON-NLS-1$
+	private int repositoryLoadTimeout = getInteger("repositoryLoadTimeout", 300); //$NON-NLS-1$
+	private boolean artifactCache = getBoolean("artifactCache", true); //$NON-NLS-1$
+	private String artifactCacheDirectory = System.getProperty(PROPERTY_PREFIX + "artifactCacheDirectory"); //$NON-NLS-1$
+	private int artifactCacheSize = getInteger("artifactCacheSize", 2048); //$NON-NLS-1$
+	private boolean linkArtifacts = getBoolean("linkArtifacts", true); //$NON-NLS-1$
+	private Compression compression = getCompression("compression", Compression.JAR); //$NON-NLS-1$
+	private int exportJobs = getInteger("exportJobs", Math.min(4, Runtime.getRuntime().availableProcessors())); //$NON-NLS-1$
+	private boolean validate = getBoolean("validate"); //$NON-NLS-1$
+	private String baseline = System.getProperty(PROPERTY_PREFIX + "baseline"); //$NON-NLS-1$
+
+	/**
+	 * @return number of target &times; configuration combinations resolved concurrently
+	 */
+	public int getResolveThreads() {
+		return resolveThreads;
+	}
+
+	public void setResolveThreads(int resolveThreads) {
+		this.resolveThreads = Math.max(1, resolveThreads);
+	}
+
+	/**
+	 * @return <code>true</code> - resolve every target with slicer mode IU locations only once
+	 *         for all platforms and derive the IUs of the single configurations from the
+	 *         platform filters (p2 mirror only)
+	 */
+	public boolean isResolveOnce() {
+		return resolveOnce;
+	}
+
+	public void setResolveOnce(boolean resolveOnce) {
+		this.resolveOnce = resolveOnce;
+	}
+
+	/**
+	 * @return <code>true</code> - resolve the (location, unit, platform) nodes shared by several
+	 *         targets only once, see {@link TargetGraph} (p2 mirror only)
+	 */
+	public boolean isTargetGraph() {
+		return targetGraph;
+	}
+
+	public void setTargetGraph(boolean targetGraph) {
+		this.targetGraph = targetGraph;
+	}
+
+	/**
+	 * @return number of concurrent artifact transfers of the p2 mirror
+	 */
+	public int getMirrorThreads() {
+		return mirrorThreads;
+	}
+
+	public void setMirrorThreads(int mirrorThreads) {
+		this.mirrorThreads = Math.max(1, mirrorThreads);
+	}
+
+	/**
+	 * @return number of concurrent artifact transfers from a single source host, if the host has
+	 *         no own limit in {@link #getHosts()}
+	 */
+	public int getHostConnections() {
+		return hostConnections;
+	}
+
+	public void setHostConnections(int hostConnections) {
+		this.hostConnections = Math.max(1, hostConnections);
+	}
+
+	/**
+	 * @return limits of the single source hosts, comma separated
+	 *         <code>host=connections[:kilobytes per second]</code>, see {@link TransferScheduler}.
+	 *         <code>null</code> - no host specific limits
+	 */
+	public String getHosts() {
+		return hosts;
+	}
+
+	public void setHosts(String hosts) {
+		this.hosts = hosts;
+	}
+
+	/**
+	 * @return <code>true</code> - mirror only artifacts missing in the destination repository
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * @return <code>true</code> - reuse resolved IU sets of unchanged targets, see {@link ResolutionCache}
+	 */
+	public boolean isResolutionCache() {
+		return resolutionCache;
+	}
+
+	public void setResolutionCache(boolean resolutionCache) {
+		this.resolutionCache = resolutionCache;
+	}
+
+	/**
+	 * @return maximal number of cached target &times; configuration resolutions
+	 */
+	public int getResolutionCacheSize() {
+		return resolutionCacheSize;
+	}
+
+	public void setResolutionCacheSize(int resolutionCacheSize) {
+		this.resolutionCacheSize = Math.max(1, resolutionCacheSize);
+	}
+
+	/**
+	 * @return number of IUs buffered before they get written into the destination metadata
+	 *         repository
+	 */
+	public int getMetadataChunkSize() {
+		return metadataChunkSize;
+	}
+
+	public void setMetadataChunkSize(int metadataChunkSize) {
+		this.metadataChunkSize = Math.max(1, metadataChunkSize);
+	}
+
+	/**
+	 * @return <code>true</code> - keep loaded source repositories for the next exports, see
+	 *         {@link RepositoryCache}
+	 */
+	public boolean isRepositoryCache() {
+		return repositoryCache;
+	}
+
+	public void setRepositoryCache(boolean repositoryCache) {
+		this.repositoryCache = repositoryCache;
+	}
+
+	/**
+	 * @return maximal number of cached source repositories
+	 */
+	public int getRepositoryCacheSize() {
+		return repositoryCacheSize;
+	}
+
+	public void setRepositoryCacheSize(int repositoryCacheSize) {
+		this.repositoryCacheSize = Math.max(1, repositoryCacheSize);
+	}
+
+	/**
+	 * @return seconds after that a cached source repository gets refreshed
+	 */
+	public int getRepositoryCacheTimeout() {
+		return repositoryCacheTimeout;
+	}
+
+	public void setRepositoryCacheTimeout(int repositoryCacheTimeout) {
+		this.repositoryCacheTimeout = Math.max(1, repositoryCacheTimeout);
+	}
+
+	/**
+	 * @return number of source repositories loaded concurrently, see {@link RepositoryPreloader}
+	 */
+	public int getRepositoryLoadThreads() {
+		return repositoryLoadThreads;
+	}
+
+	public void setRepositoryLoadThreads(int repositoryLoadThreads) {
+		this.repositoryLoadThreads = Math.max(1, repositoryLoadThreads);
+	}
+
+	/**
+	 * @return seconds after that the load of a source repository gets canceled
+	 */
+	public int getRepositoryLoadTimeout() {
+		return repositoryLoadTimeout;
+	}
+
+	public void setRepositoryLoadTimeout(int repositoryLoadTimeout) {
+		this.repositoryLoadTimeout = Math.max(1, repositoryLoadTimeout);
+	}
+
+	/**
+	 * @return <code>true</code> - reuse artifacts mirrored by the previous exports, see
+	 *         {@link LocalArtifactCache}
+	 */
+	public boolean isArtifactCache() {
+		return artifactCache;
+	}
+
+	public void setArtifactCache(boolean artifactCache) {
+		this.artifactCache = artifactCache;
+	}
+
+	/**
+	 * @return directory of the artifact cache, may be shared by several workspaces.
+	 *         <code>null</code> - the state location of the plug-in
+	 */
+	public String getArtifactCacheDirectory() {
+		return artifactCacheDirectory;
+	}
+
+	public void setArtifactCacheDirectory(String artifactCacheDirectory) {
+		this.artifactCacheDirectory = artifactCacheDirectory;
+	}
+
+	/**
+	 * @return maximal total size of the cached artifacts in megabytes
+	 */
+	public int getArtifactCacheSize() {
+		return artifactCacheSize;
+	}
+
+	public void setArtifactCacheSize(int artifactCacheSize) {
+		this.artifactCacheSize = Math.max(1, artifactCacheSize);
+	}
+
+	/**
+	 * @return <code>true</code> - hard link artifacts of local source repositories and of the
+	 *         artifact cache into the destination, if possible. <code>false</code> - copy them
+	 */
+	public boolean isLinkArtifacts() {
+		return linkArtifacts;
+	}
+
+	public void setLinkArtifacts(boolean linkArtifacts) {
+		this.linkArtifacts = linkArtifacts;
+	}
+
+	/**
+	 * @return format of the indexes of the destination repository
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * @return number of plug-in export jobs running concurrently (plug-in export only)
+	 */
+	public int getExportJobs() {
+		return exportJobs;
+	}
+
+	public void setExportJobs(int exportJobs) {
+		this.exportJobs = Math.max(1, exportJobs);
+	}
+
+	/**
+	 * @return <code>true</code> - validate the checksums of the mirrored artifacts, see
+	 *         {@link ArtifactValidator}
+	 */
+	public boolean isValidate() {
+		return validate;
+	}
+
+	public void setValidate(boolean validate) {
+		this.validate = validate;
+	}
+
+	/**
+	 * @return previous destination repository (folder or URI). The export contains only the
+	 *         IUs and artifacts missing in it and a composite layering the export over it.
+	 *         <code>null</code> - complete export
+	 */
+	public String getBaseline() {
+		return baseline;
+	}
+
+	public void setBaseline(String baseline) {
+		this.baseline = baseline;
+	}
+
+	static int getInteger(String name, int defaultValue) {
+		return Math.max(1, Integer.getInteger(PROPERTY_PREFIX + name, defaultValue));
+	}
+
+	static Compression getCompression(String name, Compression defaultValue) {
+		Compression value = Compression.fromString(System.getProperty(PROPERTY_PREFIX + name));
+		return value != null ? value : defaultValue;
+	}
+
+	static boolean getBoolean(String name) {
+		return getBoolean(name, false);
+	}
+
+	static boolean getBoolean(String name, boolean defaultValue) {
+		String value = System.getProperty(PROPERTY_PREFIX + name);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+}
@@ -0,0 +1,42 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies local files without passing the content through the Java heap.
+ */
+public class FileTransfer {
+	private FileTransfer() {
+	}
+
+	/**
+	 * Creates a hard link to the source file. If the file system doesn't support it or the
+	 * files are on different devices, copies the file with
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+	 *
+	 * @param link <code>false</code> - always copy
+	 */
+	public static void transfer(File source, File target, boolean link) throws IOException {
+		if (link) {
+			try {
+				Files.deleteIfExists(target.toPath());
+				Files.createLink(target.toPath(), source.toPath());
+				return;
+			} catch (IOException | UnsupportedOperationException e) {
+				// Copy
+			}
+		}
+		try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				position += in.transferTo(position, size - position, out);
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.File;
+
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+
+/**
+ * Scheduling rule of a job writing into a folder. Jobs writing into the same folder or into
+ * nested folders don't run concurrently.
+ */
+class FolderRule implements ISchedulingRule {
+	private final String path;
+
+	FolderRule(File folder) {
+		this.path = folder.getAbsolutePath() + File.separator;
+	}
+
+	@Override
+	public boolean contains(ISchedulingRule rule) {
+		return rule instanceof FolderRule && ((FolderRule) rule).path.startsWith(path);
+	}
+
+	@Override
+	public boolean isConflicting(ISchedulingRule rule) {
+		if (!(rule instanceof FolderRule)) {
+			return false;
+		}
+		String otherPath = ((FolderRule) rule).path;
+		return otherPath.startsWith(path) || path.startsWith(otherPath);
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+}
@@ -0,0 +1,20 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Gets notified by the {@link TargetResolver} about each resolved target &times; configuration
+ * combination.
+ * <p>
+ * The listener is called from the resolver worker threads and must be thread safe.
+ */
+public interface ITargetResolutionListener {
+
+	/**
+	 * @param target resolved combination. The target definition is only valid during this call,
+	 *            unless the listener retains it, see {@link ResolvedTarget#retain()}.
+	 * @param monitor progress monitor of the worker
+	 */
+	void targetResolved(ResolvedTarget target, IProgressMonitor monitor) throws CoreException, InterruptedException;
+}
@@ -0,0 +1,33 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.equinox.p2.metadata.Version;
+
+/**
+ * Canonical instances of the ids, classifiers and versions of the indexes, so the values shared
+ * by many keys and IUs are stored only once. Not thread safe, every index owns its instance.
+ */
+class Interner {
+	private final Map<String, String> strings = new HashMap<>();
+	private final Map<Version, Version> versions = new HashMap<>();
+
+	String intern(String string) {
+		String internedString = strings.get(string);
+		if (internedString == null) {
+			internedString = string;
+			strings.put(string, string);
+		}
+		return internedString;
+	}
+
+	Version intern(Version version) {
+		Version internedVersion = versions.get(version);
+		if (internedVersion == null) {
+			internedVersion = version;
+			versions.put(version, version);
+		}
+		return internedVersion;
+	}
+}
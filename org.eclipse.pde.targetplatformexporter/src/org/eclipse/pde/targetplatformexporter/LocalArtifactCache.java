@@ -0,0 +1,208 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+
+/**
+ * Content addressed disk cache of artifacts, shared by all exports.
+ * <p>
+ * The artifacts are stored under the hash of the artifact key and the checksum of the
+ * artifact, so only artifacts with a checksum property get cached. Several workspaces or
+ * machines may share the cache directory, the files are written atomically.
+ * <p>
+ * The artifacts are copied into the cache, never linked to the destination they were mirrored
+ * into, so the cache size counts only own files. A cached artifact is validated against the
+ * checksum of the descriptor before it is reused.
+ * <p>
+ * The total size of the cache is bounded, the least recently used artifacts get evicted.
+ */
+public class LocalArtifactCache {
+	private static final String FILE_EXTENSION = ".artifact"; //$NON-NLS-1$
+	private static final String TEMP_FILE_EXTENSION = ".tmp"; //$NON-NLS-1$
+	private static final long MEGABYTE = 1024 * 1024;
+
+	private static LocalArtifactCache defaultCache;
+
+	private final File directory;
+	private final long maxSize;
+	private long size = -1;
+
+	/**
+	 * @param maxSize maximal total size of the cached artifacts in bytes
+	 */
+	public LocalArtifactCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return cache in {@link ExportOptions#getArtifactCacheDirectory()} or in the state location
+	 *         of the plug-in
+	 */
+	public static synchronized LocalArtifactCache getDefault(ExportOptions options) {
+		File directory;
+		if (options.getArtifactCacheDirectory() != null) {
+			directory = new File(options.getArtifactCacheDirectory());
+		} else {
+			directory = Activator.getDefault().getStateLocation().append("artifact-cache").toFile(); //$NON-NLS-1$
+		}
+		long maxSize = options.getArtifactCacheSize() * MEGABYTE;
+		if (defaultCache == null || !defaultCache.directory.equals(directory) || defaultCache.maxSize != maxSize) {
+			defaultCache = new LocalArtifactCache(directory, maxSize);
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * @return cached artifact or <code>null</code>. A cached artifact not matching the descriptor
+	 *         gets removed.
+	 */
+	public File get(IArtifactDescriptor descriptor) {
+		String key = computeKey(descriptor);
+		if (key == null) {
+			return null;
+		}
+		File file = getFile(key);
+		if (!file.isFile()) {
+			return null;
+		}
+		if (!ArtifactValidator.validate(descriptor, file).isOK()) {
+			remove(descriptor);
+			return null;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return file;
+	}
+
+	/**
+	 * Stores a copy of the artifact file. Does nothing, if the descriptor has no checksum or the
+	 * artifact is a folder.
+	 */
+	public void put(IArtifactDescriptor descriptor, File artifactFile) {
+		if (!artifactFile.isFile()) {
+			// Folder based artifacts are not cached
+			return;
+		}
+		String key = computeKey(descriptor);
+		if (key == null || getFile(key).isFile()) {
+			return;
+		}
+		directory.mkdirs();
+		File tempFile = new File(directory, UUID.randomUUID() + TEMP_FILE_EXTENSION);
+		try {
+			FileTransfer.transfer(artifactFile, tempFile, false);
+			Files.move(tempFile.toPath(), getFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Activator.log(e);
+			tempFile.delete();
+			return;
+		}
+		synchronized (this) {
+			if (size >= 0) {
+				size += artifactFile.length();
+			}
+			if (size < 0 || size > maxSize) {
+				evict();
+			}
+		}
+	}
+
+	/**
+	 * Removes the cached artifact, e.g. after it failed the validation
+	 */
+	public void remove(IArtifactDescriptor descriptor) {
+		String key = computeKey(descriptor);
+		if (key != null && getFile(key).delete()) {
+			synchronized (this) {
+				size = -1;
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached artifacts
+	 */
+	public synchronized void clear() {
+		for (File file : getEntries()) {
+			file.delete();
+		}
+		size = 0;
+	}
+
+	private void evict() {
+		File[] files = getEntries();
+		size = 0;
+		for (File file : files) {
+			size += file.length();
+		}
+		if (size <= maxSize) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File file1, File file2) {
+				return Long.compare(file1.lastModified(), file2.lastModified());
+			}
+		});
+		for (int i = 0; i < files.length && size > maxSize; i++) {
+			long length = files[i].length();
+			if (files[i].delete()) {
+				size -= length;
+			}
+		}
+	}
+
+	private File[] getEntries() {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(FILE_EXTENSION);
+			}
+		});
+		return files != null ? files : new File[0];
+	}
+
+	private File getFile(String key) {
+		return new File(directory, key + FILE_EXTENSION);
+	}
+
+	/**
+	 * @return <code>null</code> - the descriptor has no checksum
+	 */
+	private static String computeKey(IArtifactDescriptor descriptor) {
+		for (String property : ArtifactValidator.CHECKSUM_PROPERTIES) {
+			String checksum = descriptor.getProperty(property);
+			if (checksum != null) {
+				IArtifactKey key = descriptor.getArtifactKey();
+				MessageDigest digest = createDigest();
+				digest.update((key.getClassifier() + '/' + key.getId() + '/' + key.getVersion() + '/' + property + '=' + checksum).getBytes(StandardCharsets.UTF_8));
+				StringBuilder hash = new StringBuilder();
+				for (byte b : digest.digest()) {
+					hash.append(String.format("%02x", b)); //$NON-NLS-1$
+				}
+				return hash.toString();
+			}
+		}
+		return null;
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
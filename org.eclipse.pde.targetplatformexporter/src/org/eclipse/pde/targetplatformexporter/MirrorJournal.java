@@ -0,0 +1,135 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+
+/**
+ * Checkpoint journal of a p2 mirror export in the destination folder.
+ * <p>
+ * Records the resolved IU sets of the target &times; configuration combinations and the
+ * mirrored artifact keys. The journal gets deleted after a successful export, so an existing
+ * journal means, that the previous export was canceled or crashed. The next export resumes it:
+ * the recorded combinations are not resolved again and the recorded artifacts are not mirrored
+ * again.
+ */
+@SuppressWarnings("restriction")
+public class MirrorJournal {
+	private static final String JOURNAL_FOLDER = ".mirror-journal"; //$NON-NLS-1$
+	private static final String ARTIFACTS_FILE = "artifacts"; //$NON-NLS-1$
+	private static final String RESOLUTIONS_FOLDER = "resolutions"; //$NON-NLS-1$
+
+	private final File directory;
+	private final boolean resumed;
+	private final ResolutionCache resolutions;
+	private BufferedWriter artifactsWriter;
+	private boolean closed;
+
+	public MirrorJournal(String destination) {
+		this.directory = new File(destination, JOURNAL_FOLDER);
+		this.resumed = directory.isDirectory();
+		this.resolutions = new ResolutionCache(new File(directory, RESOLUTIONS_FOLDER), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return <code>true</code> - the journal of an interrupted export was found
+	 */
+	public boolean isResumed() {
+		return resumed;
+	}
+
+	/**
+	 * @return resolved IU sets, see {@link TargetResolver#setJournal(ResolutionCache)}
+	 */
+	public ResolutionCache getResolutions() {
+		return resolutions;
+	}
+
+	/**
+	 * @return keys of the artifacts mirrored by the interrupted export
+	 */
+	public Set<IArtifactKey> readMirroredArtifacts() {
+		Set<IArtifactKey> keys = new HashSet<>();
+		File file = new File(directory, ARTIFACTS_FILE);
+		if (!file.isFile()) {
+			return keys;
+		}
+		try {
+			for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				try {
+					keys.add(ArtifactKey.parse(line));
+				} catch (IllegalArgumentException e) {
+					// Last line of a crashed export
+				}
+			}
+		} catch (IOException e) {
+			Activator.log(e);
+		}
+		return keys;
+	}
+
+	/**
+	 * Records mirrored artifacts. The records are flushed immediately. Does nothing after
+	 * {@link #close()}.
+	 */
+	public synchronized void artifactsMirrored(Collection<IArtifactKey> keys) {
+		if (closed) {
+			return;
+		}
+		try {
+			if (artifactsWriter == null) {
+				directory.mkdirs();
+				artifactsWriter = Files.newBufferedWriter(new File(directory, ARTIFACTS_FILE).toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			for (IArtifactKey key : keys) {
+				artifactsWriter.write(key.toExternalForm());
+				artifactsWriter.newLine();
+			}
+			artifactsWriter.flush();
+		} catch (IOException e) {
+			Activator.log(e);
+		}
+	}
+
+	/**
+	 * Closes the journal and keeps it for the next export
+	 */
+	public synchronized void close() {
+		closed = true;
+		if (artifactsWriter != null) {
+			try {
+				artifactsWriter.close();
+			} catch (IOException e) {
+				Activator.log(e);
+			}
+			artifactsWriter = null;
+		}
+	}
+
+	/**
+	 * Deletes the journal of a successfully finished export
+	 */
+	public synchronized void complete() {
+		close();
+		delete(directory);
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
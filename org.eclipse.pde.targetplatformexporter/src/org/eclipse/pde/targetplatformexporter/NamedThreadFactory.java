@@ -0,0 +1,23 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads for the worker pools of the exporter.
+ */
+class NamedThreadFactory implements ThreadFactory {
+	private final String name;
+	private final AtomicInteger counter = new AtomicInteger();
+
+	NamedThreadFactory(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, name + " #" + counter.incrementAndGet()); //$NON-NLS-1$
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -1,16 +1,33 @@
 package org.eclipse.pde.targetplatformexporter;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.URIUtil;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository;
 import org.eclipse.equinox.internal.p2.repository.Transport;
@@ -22,20 +39,37 @@ import org.eclipse.equinox.p2.internal.repository.mirroring.Mirroring;
 import org.eclipse.equinox.p2.internal.repository.tools.RepositoryDescriptor;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IVersionedId;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.ICompositeRepository;
 import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.ArtifactKeyQuery;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 import org.osgi.framework.ServiceReference;
 
 @SuppressWarnings("restriction")
 public class P2MirrorTool {
+	/**
+	 * Number of artifact keys mirrored by a single {@link Mirroring}
+	 */
+	private static final int WORK_UNIT_SIZE = 16;
+	private static final long POLL_INTERVAL = 100;
+	/**
+	 * Folder of the composite layering a delta export over its baseline
+	 */
+	public static final String COMPOSITE_FOLDER = "composite"; //$NON-NLS-1$
+
+	private static IProvisioningAgent createdAgent;
+
 	private SubMonitor monitor;
 	private IProvisioningAgent agent;
-	private CompositeMetadataRepository compositeMetadataRepository;
-	private CompositeArtifactRepository compositeArtifactRepository;
 	protected IArtifactRepository destinationArtifactRepository = null;
 	protected IMetadataRepository destinationMetadataRepository = null;
 	protected List<URI> artifactReposToRemove = new ArrayList<URI>();
@@ -45,93 +79,503 @@ public class P2MirrorTool {
 	private IMetadataRepository destMetadataRepository;
 	private Set<IInstallableUnit> installableUnitSet;
 	private Set<URI> repoURIs;
+	private ExportOptions options;
+	private Map<Set<URI>, IArtifactRepository> sourceRepositories = new HashMap<Set<URI>, IArtifactRepository>();
+	private ArtifactKeyIndex artifactKeys = new ArtifactKeyIndex();
+	private Set<IArtifactKey> existingKeys = Collections.emptySet();
+	private int skippedKeys;
+	private TransferScheduler scheduler;
+	private int submittedWorkUnits;
+	private int submittedKeys;
+	private AtomicInteger cachedArtifacts = new AtomicInteger();
+	private MirrorJournal journal;
+	private ExportMetrics metrics = new ExportMetrics();
+	private TransferProgress progress = new TransferProgress();
+	private int journaledKeys;
+	private AtomicInteger localArtifacts = new AtomicInteger();
+	private Map<Set<URI>, IMetadataRepository> sourceMetadataRepositories = new HashMap<Set<URI>, IMetadataRepository>();
+	private RepositoryPreloader preloader;
+	private UnitReferenceIndex pendingUnits = new UnitReferenceIndex();
+	private int unitCount;
+	private List<IVersionedId> missingUnits = new ArrayList<IVersionedId>();
+	private File destinationFolder;
+	private DestinationIndex destinationIndex;
+	private MirrorException destinationException;
+	private final Object destinationLock = new Object();
+	private URI baselineLocation;
+	private IMetadataRepository baselineMetadataRepository;
+	private AtomicInteger baselineUnits = new AtomicInteger();
+	private boolean finalized;
 
 	public P2MirrorTool(Set<URI> repoURIs, Set<IInstallableUnit> installableUnitSet, String destFolder) {
+		this(repoURIs, installableUnitSet, destFolder, new ExportOptions());
+	}
+
+	public P2MirrorTool(Set<URI> repoURIs, Set<IInstallableUnit> installableUnitSet, String destFolder, ExportOptions options) {
 		this.repoURIs = repoURIs;
 		this.installableUnitSet = installableUnitSet;
 		this.destFolder = destFolder;
+		this.options = options;
+	}
+
+	/**
+	 * Creates a mirror tool for the streaming mode: {@link #open(IProgressMonitor)}, then
+	 * {@link #addInstallableUnits(Collection, Collection)} as the targets get resolved and
+	 * finally {@link #close(IProgressMonitor)}.
+	 */
+	public P2MirrorTool(String destFolder, ExportOptions options) {
+		this(new HashSet<URI>(), Collections.<IInstallableUnit> emptySet(), destFolder, options);
+	}
+
+	/**
+	 * @param journal records the mirrored artifacts, the artifacts recorded by an interrupted
+	 *            export are skipped. <code>null</code> - no journal
+	 */
+	public void setJournal(MirrorJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * @param metrics collects the timings and the counters of the mirroring
+	 */
+	public void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
 	}
 
 	public MultiStatus mirror(IProgressMonitor monitor) throws MirrorException, InterruptedException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, "Creating p2 repository", 8);
+		try {
+			open(subMonitor.newChild(3));
+			addInstallableUnits(installableUnitSet, repoURIs, true);
+			return close(subMonitor.newChild(5));
+		} finally {
+			dispose();
+			if (monitor != null) {
+				monitor.done();
+			}
+		}
+	}
+
+	/**
+	 * Initializes the agent and the destination repository and starts the mirroring stage
+	 */
+	public void open(IProgressMonitor monitor) throws MirrorException {
+		this.monitor = SubMonitor.convert(monitor, 3);
+
+		this.monitor.subTask("Initializing agent");
 		try {
-			this.monitor = SubMonitor.convert(monitor);
+			setupAgent();
+		} catch (ProvisionException e) {
+			LogHelper.log(e);
+		}
+		this.monitor.worked(1);
 
-			this.monitor.beginTask("Creating p2 repository", 8);
+		destinationFolder = URIUtil.toFile(getDestinationLocation());
+		if (options.isIncremental() && destinationFolder != null) {
+			// The destination is loaded on the first write, see ensureDestination()
+			destinationIndex = DestinationIndex.open(destinationFolder);
+		}
+		if (destinationIndex == null) {
+			this.monitor.subTask("Init destination repository: " + destFolder);
+			initDestinationRepository(this.monitor.newChild(2));
+		}
+		this.monitor.setWorkRemaining(0);
 
-			this.monitor.subTask("Initializing agent");
-			try {
-				setupAgent();
-			} catch (ProvisionException e) {
-				LogHelper.log(e);
+		if (options.isIncremental() && destinationIndex == null) {
+			existingKeys = destArtifactRepository.query(ArtifactKeyQuery.ALL_KEYS, this.monitor.newChild(0)).toUnmodifiableSet();
+		}
+		if (options.getBaseline() != null) {
+			initBaseline(this.monitor.newChild(0));
+		}
+		if (journal != null && journal.isResumed()) {
+			Set<IArtifactKey> journalKeys = journal.readMirroredArtifacts();
+			journaledKeys = journalKeys.size();
+			journalKeys.addAll(existingKeys);
+			existingKeys = journalKeys;
+		}
+		preloader = new RepositoryPreloader(getArtifactRepositoryManager(), getMetadataRepositoryManager(), options.isRepositoryCache() ? RepositoryCache.getDefault(options) : null, options, metrics);
+		progress = new TransferProgress();
+		scheduler = new TransferScheduler(options);
+	}
+
+	/**
+	 * Writes the IUs into the destination metadata repository in chunks of
+	 * {@link ExportOptions#getMetadataChunkSize()} and starts the mirroring of their new
+	 * artifacts right away, so the mirroring overlaps with the resolution of the remaining
+	 * targets. Only the artifact keys and compact references of the IUs are retained, the IUs
+	 * are loaded again from the source repositories when they get written.
+	 *
+	 * <p>
+	 * In the delta mode the IUs of the baseline are left out. With a valid
+	 * {@link DestinationIndex} the IUs already in the destination are left out too.
+	 * <p>
+	 * Called concurrently by the resolver workers. Only the checks against the added keys and
+	 * IUs hold the lock, the source repositories are loaded and queried outside of it.
+	 *
+	 * @param units IUs to mirror
+	 * @param repositories source repositories of the IUs
+	 */
+	public void addInstallableUnits(Collection<IInstallableUnit> units, Collection<URI> repositories) {
+		addInstallableUnits(units, repositories, false);
+	}
+
+	/**
+	 * @param retained <code>true</code> - the caller holds the IUs anyway, they are written
+	 *            directly instead of being loaded again from the source repositories
+	 */
+	private void addInstallableUnits(Collection<IInstallableUnit> units, Collection<URI> repositories, boolean retained) {
+		if (baselineMetadataRepository != null) {
+			units = removeBaselineUnits(units);
+		}
+		Set<URI> uris = new HashSet<URI>(repositories);
+		List<IArtifactKey> keys = new ArrayList<IArtifactKey>();
+		List<IInstallableUnit> retainedUnits = new ArrayList<IInstallableUnit>();
+		boolean flush = false;
+		synchronized (this) {
+			for (IInstallableUnit unit : units) {
+				for (IArtifactKey key : unit.getArtifacts()) {
+					if (!artifactKeys.add(key)) {
+						continue;
+					}
+					if (existingKeys.contains(key) || (destinationIndex != null && destinationIndex.containsArtifact(key))) {
+						skippedKeys++;
+						metrics.increment(ExportMetrics.COUNTER_ARTIFACTS_SKIPPED, 1);
+					} else {
+						keys.add(key);
+					}
+				}
 			}
-			this.monitor.worked(1);
-			
-			if (repoURIs.size()> 1) {
-				this.monitor.subTask("Init source repository");
-			} else {
-				this.monitor.subTask("Init " + repoURIs.size() +" source repositories");
+			for (IInstallableUnit unit : units) {
+				if (destinationIndex != null && destinationIndex.containsUnit(unit)) {
+					continue;
+				}
+				if (retained) {
+					retainedUnits.add(unit);
+				} else if (pendingUnits.add(unit, uris) && pendingUnits.getPendingCount() >= options.getMetadataChunkSize()) {
+					flush = true;
+				}
 			}
-			initCompositeRepositories(repoURIs);
-			this.monitor.worked(1);
-			
-			this.monitor.subTask("Init destination repository: " + destFolder);
-			initDestinationRepository(); // worked(2)
-			
-			this.monitor.subTask("Mirroring " +installableUnitSet.size() + " artifacts");
-			MultiStatus status = mirrorArtifacts();
-			
-			if (monitor.isCanceled()) {
+		}
+
+		if (!keys.isEmpty() && ensureDestination()) {
+			IArtifactRepository sourceRepository = getSourceRepository(uris);
+			for (Map.Entry<IArtifactRepository, List<IArtifactKey>> entry : groupBySource(sourceRepository, uris, keys).entrySet()) {
+				submitWorkUnits(entry.getKey(), entry.getValue());
+			}
+		}
+		if (flush) {
+			flushMetadata();
+		}
+		writeUnits(retainedUnits, metrics.begin());
+	}
+
+	/**
+	 * Waits for the artifacts of all added IUs and writes the remaining metadata. Releases the
+	 * repositories.
+	 */
+	public MultiStatus close(IProgressMonitor monitor) throws MirrorException, InterruptedException {
+		try {
+			this.monitor = SubMonitor.convert(monitor, 5);
+
+			MultiStatus status = waitForArtifacts(this.monitor.newChild(4));
+
+			if (this.monitor.isCanceled()) {
 				throw new InterruptedException();
 			}
-			
+
 			this.monitor.subTask("Mirror metadata");
 			mirrorMetadata();
-			
-			this.monitor.worked(3);
+			if (destinationException != null) {
+				throw destinationException;
+			}
+			status.addAll(preloader.getStatus());
+			if (!missingUnits.isEmpty()) {
+				MultiStatus missingStatus = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Metadata of " + missingUnits.size() + " IUs not found in the source repositories", null);
+				for (IVersionedId reference : missingUnits) {
+					missingStatus.add(new Status(IStatus.ERROR, Activator.PLUGIN_ID, "IU " + reference + " not found"));
+				}
+				status.add(missingStatus);
+			}
+
+			if (destArtifactRepository != null) {
+				this.monitor.subTask("Compressing repository: " + options.getCompression());
+				compressRepositories();
+				writeDestinationIndex();
+			} else {
+				status.add(new Status(IStatus.INFO, Activator.PLUGIN_ID, "The destination repository is up to date, " + destinationIndex.size() + " indexed artifacts and IUs"));
+			}
+
+			if (baselineLocation != null) {
+				this.monitor.subTask("Layering the delta over the baseline " + baselineLocation);
+				createComposite();
+				status.add(new Status(IStatus.INFO, Activator.PLUGIN_ID, "Left out " + baselineUnits.get() + " IUs of the baseline, the composite is in '" + COMPOSITE_FOLDER + "'"));
+			}
+
+			this.monitor.worked(1);
 
 			return status;
 		} finally {
+			dispose();
+		}
+	}
+
+	/**
+	 * Validates all artifacts of an existing destination repository with
+	 * {@link ExportOptions#getMirrorThreads()} threads. Doesn't modify the repository.
+	 *
+	 * @return status with a child for every invalid artifact
+	 */
+	public MultiStatus verify(IProgressMonitor monitor) throws MirrorException, InterruptedException {
+		this.monitor = SubMonitor.convert(monitor, "Validating p2 repository: " + destFolder, 2);
+		try {
+			setupAgent();
+			IArtifactRepository repository = addRepository(getArtifactRepositoryManager(), URIUtil.fromString(destFolder), 0, this.monitor.newChild(1));
+			if (!(repository instanceof SimpleArtifactRepository)) {
+				throw new MirrorException("Not a simple artifact repository: '" + destFolder + "'");
+			}
+			long begin = metrics.begin();
+			MultiStatus status = ArtifactValidator.verify((SimpleArtifactRepository) repository, options.getMirrorThreads(), this.monitor.newChild(1));
+			metrics.end(ExportMetrics.PHASE_VALIDATION, begin);
+			metrics.increment(ExportMetrics.COUNTER_ARTIFACTS_INVALID, status.getChildren().length);
+			return status;
+		} catch (URISyntaxException e) {
+			throw new MirrorException("Invalid destination repository folder: '" + destFolder + "'");
+		} catch (ProvisionException e) {
+			throw new MirrorException("Error loading artifact repository in '" + destFolder + "': " + e.toString(), e);
+		} finally {
+			dispose();
+		}
+	}
+
+	/**
+	 * Releases the repositories. Does nothing, if already released.
+	 */
+	public void dispose() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		if (preloader != null) {
+			preloader.shutdownNow();
+		}
+		if (!finalized && agent != null) {
+			finalized = true;
 			finalizeRepositories();
-			if (monitor != null) {
-				monitor.done();
+		}
+	}
+
+	/**
+	 * The composites are shared by the mirroring workers, so they are never modified after
+	 * their creation. One composite is created for every distinct set of the source
+	 * repositories.
+	 * <p>
+	 * The children are loaded concurrently by the {@link RepositoryPreloader} first (through the
+	 * {@link RepositoryCache}, if enabled), so the composite gets them from the manager. Children
+	 * that failed to load are left out.
+	 */
+	private IArtifactRepository getSourceRepository(Set<URI> uris) {
+		synchronized (sourceRepositories) {
+			IArtifactRepository repository = sourceRepositories.get(uris);
+			if (repository != null) {
+				return repository;
+			}
+		}
+		// Loaded outside of the lock, a concurrently created composite for the same sources wins
+		preload(uris);
+		CompositeArtifactRepository compositeArtifactRepository = CompositeArtifactRepository.createMemoryComposite(agent);
+		for (URI uri : uris) {
+			if (preloader.isArtifactRepositoryLoaded(uri)) {
+				compositeArtifactRepository.addChild(uri);
+			}
+		}
+		synchronized (sourceRepositories) {
+			IArtifactRepository repository = sourceRepositories.get(uris);
+			if (repository == null) {
+				repository = compositeArtifactRepository;
+				sourceRepositories.put(uris, repository);
 			}
+			return repository;
 		}
 	}
-	
-	private void initCompositeRepositories(Set<URI> repoURIs) {
-		compositeArtifactRepository = CompositeArtifactRepository.createMemoryComposite(agent);
-		for (URI uri : repoURIs) {
-			compositeArtifactRepository.addChild(uri);
+
+	/**
+	 * Like {@link #getSourceRepository(Set)}, used to load the IUs referenced by the
+	 * {@link UnitReferenceIndex}
+	 */
+	private IMetadataRepository getSourceMetadataRepository(Set<URI> uris) {
+		synchronized (sourceMetadataRepositories) {
+			IMetadataRepository repository = sourceMetadataRepositories.get(uris);
+			if (repository != null) {
+				return repository;
+			}
 		}
-		
-		compositeMetadataRepository = CompositeMetadataRepository.createMemoryComposite(agent);
-		for (URI uri : repoURIs) {
-			compositeMetadataRepository.addChild(uri);
+		preload(uris);
+		CompositeMetadataRepository compositeMetadataRepository = CompositeMetadataRepository.createMemoryComposite(agent);
+		for (URI uri : uris) {
+			if (preloader.isMetadataRepositoryLoaded(uri)) {
+				compositeMetadataRepository.addChild(uri);
+			}
+		}
+		synchronized (sourceMetadataRepositories) {
+			IMetadataRepository repository = sourceMetadataRepositories.get(uris);
+			if (repository == null) {
+				repository = compositeMetadataRepository;
+				sourceMetadataRepositories.put(uris, repository);
+			}
+			return repository;
 		}
 	}
 
-	private void initDestinationRepository() throws MirrorException {
+	/**
+	 * Loads the baseline of the delta mode. The artifacts of the baseline are skipped like the
+	 * existing artifacts of the destination.
+	 */
+	private void initBaseline(IProgressMonitor monitor) throws MirrorException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 2);
+		try {
+			baselineLocation = RepositoryHelper.localRepoURIHelper(URIUtil.fromString(options.getBaseline()));
+		} catch (URISyntaxException e) {
+			throw new MirrorException("Invalid baseline repository: '" + options.getBaseline() + "'");
+		}
+		IArtifactRepository baselineArtifactRepository;
+		try {
+			baselineMetadataRepository = addRepository(getMetadataRepositoryManager(), baselineLocation, 0, subMonitor.newChild(1));
+			baselineArtifactRepository = addRepository(getArtifactRepositoryManager(), baselineLocation, 0, subMonitor.newChild(1));
+		} catch (ProvisionException e) {
+			throw new MirrorException("Error loading baseline repository '" + options.getBaseline() + "': " + e.toString(), e);
+		}
+		Set<IArtifactKey> keys = new HashSet<IArtifactKey>(existingKeys);
+		keys.addAll(baselineArtifactRepository.query(ArtifactKeyQuery.ALL_KEYS, null).toUnmodifiableSet());
+		existingKeys = keys;
+	}
+
+	/**
+	 * IUs are immutable, so an IU of the baseline with the same id and version is the same IU.
+	 * A changed IU has a new version.
+	 *
+	 * @return IUs not contained in the baseline
+	 */
+	private List<IInstallableUnit> removeBaselineUnits(Collection<IInstallableUnit> units) {
+		List<IInstallableUnit> result = new ArrayList<IInstallableUnit>();
+		for (IInstallableUnit unit : units) {
+			if (baselineMetadataRepository.query(QueryUtil.createIUQuery(unit.getId(), unit.getVersion()), null).isEmpty()) {
+				result.add(unit);
+			} else {
+				baselineUnits.incrementAndGet();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the composite repository in {@link #COMPOSITE_FOLDER}, that layers the delta
+	 * (referenced relatively) over the baseline. Existing composites get replaced.
+	 */
+	@SuppressWarnings("unchecked")
+	private void createComposite() throws MirrorException {
+		File folder = new File(destinationFolder, COMPOSITE_FOLDER);
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(IRepository.PROP_COMPRESSED, Boolean.toString(options.getCompression() == Compression.JAR));
+		URI[] children = { URI.create("../"), baselineLocation }; //$NON-NLS-1$
+		URI location = folder.toURI();
 		IArtifactRepositoryManager artifactRepositoryManager = getArtifactRepositoryManager();
 		IMetadataRepositoryManager metadataRepositoryManager = getMetadataRepositoryManager();
-		
-		URI uri;
+		artifactRepositoryManager.removeRepository(location);
+		metadataRepositoryManager.removeRepository(location);
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
 		try {
-			uri = URIUtil.fromString(destFolder);
+			artifactReposToRemove.add(location);
+			metadataReposToRemove.add(location);
+			ICompositeRepository<IArtifactKey> artifactComposite = (ICompositeRepository<IArtifactKey>) artifactRepositoryManager.createRepository(location, "Target (delta)", IArtifactRepositoryManager.TYPE_COMPOSITE_REPOSITORY, properties);
+			ICompositeRepository<IInstallableUnit> metadataComposite = (ICompositeRepository<IInstallableUnit>) metadataRepositoryManager.createRepository(location, "Target (delta)", IMetadataRepositoryManager.TYPE_COMPOSITE_REPOSITORY, properties);
+			for (URI child : children) {
+				artifactComposite.addChild(child);
+				metadataComposite.addChild(child);
+			}
+		} catch (ProvisionException e) {
+			throw new MirrorException("Error creating the composite repository in '" + folder + "': " + e.toString(), e);
+		}
+	}
+
+	private void preload(Set<URI> uris) {
+		try {
+			preloader.preload(uris);
+		} catch (InterruptedException e) {
+			// The composites load the remaining children, the caller observes the cancellation
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Loads the destination repository, if the {@link DestinationIndex} deferred the load. A
+	 * failure is thrown by {@link #close(IProgressMonitor)}.
+	 *
+	 * @return <code>false</code> - the destination repository failed to load
+	 */
+	private boolean ensureDestination() {
+		// A separate lock, the load must not block the bookkeeping of the other workers
+		synchronized (destinationLock) {
+			if (destinationException != null) {
+				return false;
+			}
+			if (destArtifactRepository != null) {
+				return true;
+			}
+			// May be called by the resolver workers, they must not report to the monitor of the caller
+			try {
+				initDestinationRepository(null);
+				return true;
+			} catch (MirrorException e) {
+				destinationException = e;
+				return false;
+			}
+		}
+	}
+
+	private URI getDestinationLocation() throws MirrorException {
+		try {
+			return RepositoryHelper.localRepoURIHelper(URIUtil.fromString(destFolder));
 		} catch (URISyntaxException e) {
 			throw new MirrorException("Invalid destination repository folder: '" + destFolder + "'");
 		}
+	}
+
+	/**
+	 * Indexes the destination for the next incremental export, see {@link DestinationIndex}
+	 */
+	private void writeDestinationIndex() {
+		if (destinationFolder == null) {
+			return;
+		}
+		try {
+			DestinationIndex.write(destinationFolder, destArtifactRepository.query(ArtifactKeyQuery.ALL_KEYS, null).toUnmodifiableSet(),
+					destMetadataRepository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet());
+		} catch (IOException e) {
+			Activator.log(e);
+		}
+	}
+
+	private void initDestinationRepository(IProgressMonitor monitor) throws MirrorException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 2);
+		IArtifactRepositoryManager artifactRepositoryManager = getArtifactRepositoryManager();
+		IMetadataRepositoryManager metadataRepositoryManager = getMetadataRepositoryManager();
 		
 		RepositoryDescriptor destRepositoryDescriptor = new RepositoryDescriptor();
 
 		//destRepoDesc.setFormat(sourceURI);
 		destRepositoryDescriptor.setAppend(true);
-		destRepositoryDescriptor.setCompressed(true);
+		// Compressed once at the end, see compressRepositories()
+		destRepositoryDescriptor.setCompressed(false);
 		destRepositoryDescriptor.setName("Target");
 		destRepositoryDescriptor.setAtomic("true");
-		destRepositoryDescriptor.setLocation(RepositoryHelper.localRepoURIHelper(uri));
+		destRepositoryDescriptor.setLocation(getDestinationLocation());
 		
 		try {
-			destArtifactRepository = addRepository(artifactRepositoryManager, destRepositoryDescriptor.getRepoLocation(), IRepositoryManager.REPOSITORY_HINT_MODIFIABLE);
+			destArtifactRepository = addRepository(artifactRepositoryManager, destRepositoryDescriptor.getRepoLocation(), IRepositoryManager.REPOSITORY_HINT_MODIFIABLE, subMonitor.newChild(1));
 		} catch (ProvisionException exception) {
 			try {
 				destArtifactRepository = artifactRepositoryManager.createRepository(destRepositoryDescriptor.getRepoLocation(), destRepositoryDescriptor.getName(), IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
@@ -141,7 +585,7 @@ public class P2MirrorTool {
 		}
 
 		try {
-			destMetadataRepository = addRepository(metadataRepositoryManager, destRepositoryDescriptor.getRepoLocation(), IRepositoryManager.REPOSITORY_HINT_MODIFIABLE);
+			destMetadataRepository = addRepository(metadataRepositoryManager, destRepositoryDescriptor.getRepoLocation(), IRepositoryManager.REPOSITORY_HINT_MODIFIABLE, subMonitor.newChild(1));
 		} catch (ProvisionException exception) {
 			try {
 				destMetadataRepository = metadataRepositoryManager.createRepository(destRepositoryDescriptor.getRepoLocation(), destRepositoryDescriptor.getName(), IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
@@ -154,8 +598,8 @@ public class P2MirrorTool {
 			throw new RuntimeException("Not midifiable");
 		}
 
-		destMetadataRepository.setProperty(IRepository.PROP_COMPRESSED, "true");
-		destArtifactRepository.setProperty(IRepository.PROP_COMPRESSED, "true");
+		destMetadataRepository.setProperty(IRepository.PROP_COMPRESSED, "false");
+		destArtifactRepository.setProperty(IRepository.PROP_COMPRESSED, "false");
 	}
 
 	private void setupAgent() throws ProvisionException {
@@ -167,7 +611,29 @@ public class P2MirrorTool {
 			if (agent != null)
 				return;
 		}
-		//there is no agent around so we need to create one
+		//there is no agent around so we need to create one, it's reused by the next exports
+		synchronized (P2MirrorTool.class) {
+			if (createdAgent == null) {
+				createdAgent = createAgent();
+			}
+			agent = createdAgent;
+		}
+	}
+
+	/**
+	 * Stops the agent created for the exports, if the running system has none. Called when the
+	 * bundle stops.
+	 */
+	static void disposeAgent() {
+		synchronized (P2MirrorTool.class) {
+			if (createdAgent != null) {
+				createdAgent.stop();
+				createdAgent = null;
+			}
+		}
+	}
+
+	private static IProvisioningAgent createAgent() throws ProvisionException {
 		ServiceReference<IProvisioningAgentProvider> providerRef = Activator.getBundleContext().getServiceReference(IProvisioningAgentProvider.class);
 		if (providerRef == null)
 			throw new RuntimeException("No provisioning agent provider is available"); //$NON-NLS-1$
@@ -175,8 +641,9 @@ public class P2MirrorTool {
 		if (provider == null)
 			throw new RuntimeException("No provisioning agent provider is available"); //$NON-NLS-1$
 		//obtain agent for currently running system
-		agent = provider.createAgent(null);
+		IProvisioningAgent agent = provider.createAgent(null);
 		Activator.getBundleContext().ungetService(providerRef);
+		return agent;
 	}
 
 	protected IArtifactRepositoryManager getArtifactRepositoryManager() {
@@ -188,17 +655,17 @@ public class P2MirrorTool {
 	}
 	
 	//Helper to add a repository. It takes care of adding the repos to the deletion list and loading it 
-	protected IMetadataRepository addRepository(IMetadataRepositoryManager manager, URI location, int flags) throws ProvisionException {
+	protected IMetadataRepository addRepository(IMetadataRepositoryManager manager, URI location, int flags, IProgressMonitor monitor) throws ProvisionException {
 		if (!manager.contains(location))
 			metadataReposToRemove.add(location);
-		return manager.loadRepository(location, flags, monitor.newChild(1));
+		return manager.loadRepository(location, flags, monitor);
 	}
 
 	//Helper to add a repository. It takes care of adding the repos to the deletion list and loading it
-	protected IArtifactRepository addRepository(IArtifactRepositoryManager manager, URI location, int flags) throws ProvisionException {
+	protected IArtifactRepository addRepository(IArtifactRepositoryManager manager, URI location, int flags, IProgressMonitor monitor) throws ProvisionException {
 		if (!manager.contains(location))
 			artifactReposToRemove.add(location);
-		return manager.loadRepository(location, flags, monitor.newChild(1));
+		return manager.loadRepository(location, flags, monitor);
 	}
 
 	private void finalizeRepositories() {
@@ -216,14 +683,28 @@ public class P2MirrorTool {
 	}
 
 
-	protected Mirroring getMirroring() {
+	/**
+	 * @return keys of the artifacts of all added IUs
+	 */
+	protected synchronized List<IArtifactKey> getArtifactKeys() {
+		return artifactKeys.getKeys();
+	}
 
-		List<IArtifactKey> keys = new ArrayList<IArtifactKey>();
-		for (IInstallableUnit iu : installableUnitSet) {
-			keys.addAll(iu.getArtifacts());
+	/**
+	 * @return unique keys of the artifacts of the IUs
+	 */
+	protected List<IArtifactKey> getArtifactKeys(Collection<IInstallableUnit> units) {
+		ArtifactKeyIndex index = new ArtifactKeyIndex();
+		for (IInstallableUnit iu : units) {
+			for (IArtifactKey key : iu.getArtifacts()) {
+				index.add(key);
+			}
 		}
-		
-		Mirroring mirror = new Mirroring(compositeArtifactRepository, destArtifactRepository, false);
+		return index.getKeys();
+	}
+
+	protected Mirroring getMirroring(IArtifactRepository sourceRepository, List<IArtifactKey> keys) {
+		Mirroring mirror = new Mirroring(sourceRepository, destArtifactRepository, false);
 		mirror.setValidate(false);
 		mirror.setTransport((Transport) agent.getService(Transport.SERVICE_NAME));
 		mirror.setMirrorProperties(true);
@@ -234,12 +715,380 @@ public class P2MirrorTool {
 
 		return mirror;
 	}
-	
-	private MultiStatus mirrorArtifacts() throws MirrorException {
-		return getMirroring().run(true, true);
+
+	/**
+	 * Groups the keys by the child of the composite providing them, so the transfers can be
+	 * scheduled per source host. Keys not found in a single child are mirrored from the
+	 * composite.
+	 */
+	private Map<IArtifactRepository, List<IArtifactKey>> groupBySource(IArtifactRepository compositeRepository, Set<URI> uris, List<IArtifactKey> keys) {
+		List<IArtifactRepository> children = new ArrayList<IArtifactRepository>();
+		for (URI uri : uris) {
+			if (preloader.isArtifactRepositoryLoaded(uri)) {
+				try {
+					// Preloaded, so returned by the manager right away
+					children.add(getArtifactRepositoryManager().loadRepository(uri, null));
+				} catch (ProvisionException e) {
+					// Mirrored from the composite
+				}
+			}
+		}
+		Map<IArtifactRepository, List<IArtifactKey>> groups = new LinkedHashMap<IArtifactRepository, List<IArtifactKey>>();
+		for (IArtifactKey key : keys) {
+			IArtifactRepository source = compositeRepository;
+			for (IArtifactRepository child : children) {
+				if (child.contains(key)) {
+					source = child;
+					break;
+				}
+			}
+			List<IArtifactKey> group = groups.get(source);
+			if (group == null) {
+				group = new ArrayList<IArtifactKey>();
+				groups.put(source, group);
+			}
+			group.add(key);
+		}
+		return groups;
+	}
+
+	/**
+	 * Splits the keys into work units, the largest artifacts first
+	 */
+	private void submitWorkUnits(IArtifactRepository sourceRepository, List<IArtifactKey> keys) {
+		final Map<IArtifactKey, Long> sizes = new HashMap<IArtifactKey, Long>();
+		for (IArtifactKey key : keys) {
+			IArtifactDescriptor descriptor = getCanonicalDescriptor(sourceRepository, key);
+			sizes.put(key, Long.valueOf(descriptor != null ? getSize(descriptor) : 0));
+		}
+		Collections.sort(keys, new Comparator<IArtifactKey>() {
+			@Override
+			public int compare(IArtifactKey key1, IArtifactKey key2) {
+				return sizes.get(key2).compareTo(sizes.get(key1));
+			}
+		});
+		String host = getHost(sourceRepository);
+		for (int i = 0; i < keys.size(); i += WORK_UNIT_SIZE) {
+			List<IArtifactKey> workUnit = new ArrayList<IArtifactKey>(keys.subList(i, Math.min(keys.size(), i + WORK_UNIT_SIZE)));
+			long size = 0;
+			for (IArtifactKey key : workUnit) {
+				size += sizes.get(key).longValue();
+			}
+			submit(sourceRepository, workUnit, host, size);
+		}
+	}
+
+	/**
+	 * @return host of a remote repository, <code>null</code> - local repository
+	 */
+	private static String getHost(IArtifactRepository repository) {
+		URI location = repository.getLocation();
+		if (location == null || "file".equals(location.getScheme())) { //$NON-NLS-1$
+			return null;
+		}
+		return location.getHost() != null ? location.getHost() : location.getScheme();
+	}
+
+	/**
+	 * Queues a work unit for the mirroring workers. The destination artifact repository
+	 * synchronizes the registration of the new descriptors itself.
+	 */
+	private void submit(final IArtifactRepository sourceRepository, final List<IArtifactKey> workUnit, final String host, long size) {
+		progress.start();
+		scheduler.submit(host, size, new Callable<MultiStatus>() {
+			@Override
+			public MultiStatus call() throws Exception {
+				long begin = metrics.begin();
+				MultiStatus status = mirrorWorkUnit(sourceRepository, workUnit, host);
+				metrics.end(ExportMetrics.PHASE_ARTIFACT_TRANSFER, begin);
+				if (options.isValidate()) {
+					validateWorkUnit(workUnit, status);
+				}
+				if (journal != null && status.getSeverity() < IStatus.ERROR) {
+					journal.artifactsMirrored(workUnit);
+				}
+				return status;
+			}
+		});
+		synchronized (this) {
+			submittedWorkUnits++;
+			submittedKeys += workUnit.size();
+		}
+	}
+
+	/**
+	 * Copies the artifacts found in the {@link LocalArtifactCache} or in local file based source
+	 * repositories directly, and mirrors the rest with p2. The mirrored artifacts get cached and
+	 * their bytes are accounted to the bandwidth cap of the host.
+	 */
+	private MultiStatus mirrorWorkUnit(IArtifactRepository sourceRepository, List<IArtifactKey> keys, String host) {
+		if (!(destArtifactRepository instanceof SimpleArtifactRepository)) {
+			metrics.increment(ExportMetrics.COUNTER_ARTIFACTS_MIRRORED, keys.size());
+			MultiStatus status = getMirroring(sourceRepository, keys).run(true, true);
+			progress.artifactsCompleted(keys.size(), 0);
+			return status;
+		}
+		LocalArtifactCache artifactCache = options.isArtifactCache() ? LocalArtifactCache.getDefault(options) : null;
+		SimpleArtifactRepository destination = (SimpleArtifactRepository) destArtifactRepository;
+
+		List<IArtifactKey> missingKeys = new ArrayList<IArtifactKey>();
+		List<IArtifactDescriptor> copiedDescriptors = new ArrayList<IArtifactDescriptor>();
+		int cached = 0;
+		long copiedBytes = 0;
+		for (IArtifactKey key : keys) {
+			IArtifactDescriptor descriptor = getCanonicalDescriptor(sourceRepository, key);
+			File cachedFile = descriptor != null && artifactCache != null ? artifactCache.get(descriptor) : null;
+			File sourceFile = descriptor != null && cachedFile == null ? getLocalFile(descriptor) : null;
+			if (cachedFile != null && copyToDestination(destination, descriptor, cachedFile)) {
+				copiedDescriptors.add(new ArtifactDescriptor(descriptor));
+				copiedBytes += cachedFile.length();
+				cached++;
+			} else if (sourceFile != null && copyToDestination(destination, descriptor, sourceFile)) {
+				copiedDescriptors.add(new ArtifactDescriptor(descriptor));
+				copiedBytes += sourceFile.length();
+			} else {
+				missingKeys.add(key);
+			}
+		}
+		if (!copiedDescriptors.isEmpty()) {
+			destination.addDescriptors(copiedDescriptors.toArray(new IArtifactDescriptor[copiedDescriptors.size()]), null);
+			cachedArtifacts.addAndGet(cached);
+			localArtifacts.addAndGet(copiedDescriptors.size() - cached);
+			metrics.increment(ExportMetrics.COUNTER_ARTIFACT_CACHE_HITS, cached);
+			metrics.increment(ExportMetrics.COUNTER_ARTIFACTS_COPIED_LOCALLY, copiedDescriptors.size() - cached);
+			progress.artifactsCompleted(copiedDescriptors.size(), copiedBytes);
+		}
+
+		// Mirroring without keys mirrors everything
+		if (missingKeys.isEmpty()) {
+			return new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Copied " + copiedDescriptors.size() + " local artifacts", null);
+		}
+		MultiStatus status = getMirroring(sourceRepository, missingKeys).run(true, true);
+		long bytes = 0;
+		for (IArtifactKey key : missingKeys) {
+			IArtifactDescriptor descriptor = getCanonicalDescriptor(destination, key);
+			if (descriptor == null) {
+				continue;
+			}
+			bytes += getSize(descriptor);
+			File file = artifactCache != null ? destination.getArtifactFile(descriptor) : null;
+			if (file != null) {
+				artifactCache.put(descriptor, file);
+			}
+		}
+		metrics.increment(ExportMetrics.COUNTER_ARTIFACTS_MIRRORED, missingKeys.size());
+		metrics.increment(ExportMetrics.COUNTER_BYTES_TRANSFERRED, bytes);
+		progress.artifactsCompleted(missingKeys.size(), bytes);
+		scheduler.transferred(host, bytes);
+		return status;
+	}
+
+	/**
+	 * Validates the artifacts of a work unit right after they landed. Invalid artifacts are
+	 * removed from the destination and from the artifact cache, so the next export mirrors them
+	 * again.
+	 */
+	private void validateWorkUnit(List<IArtifactKey> keys, MultiStatus status) {
+		if (!(destArtifactRepository instanceof SimpleArtifactRepository)) {
+			return;
+		}
+		SimpleArtifactRepository destination = (SimpleArtifactRepository) destArtifactRepository;
+		LocalArtifactCache artifactCache = options.isArtifactCache() ? LocalArtifactCache.getDefault(options) : null;
+		long begin = metrics.begin();
+		for (IArtifactKey key : keys) {
+			IArtifactDescriptor descriptor = getCanonicalDescriptor(destination, key);
+			if (descriptor == null) {
+				continue;
+			}
+			IStatus result = ArtifactValidator.validate(destination, descriptor);
+			if (!result.isOK()) {
+				destination.removeDescriptor(descriptor, null);
+				if (artifactCache != null) {
+					artifactCache.remove(descriptor);
+				}
+				metrics.increment(ExportMetrics.COUNTER_ARTIFACTS_INVALID, 1);
+				status.add(result);
+			}
+		}
+		metrics.end(ExportMetrics.PHASE_VALIDATION, begin);
+	}
+
+	private static long getSize(IArtifactDescriptor descriptor) {
+		try {
+			String size = descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_SIZE);
+			return size != null ? Long.parseLong(size) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return artifact file of a file based simple repository or <code>null</code>
+	 */
+	private static File getLocalFile(IArtifactDescriptor descriptor) {
+		if (!(descriptor.getRepository() instanceof SimpleArtifactRepository)) {
+			return null;
+		}
+		File file = ((SimpleArtifactRepository) descriptor.getRepository()).getArtifactFile(descriptor);
+		return file != null && file.isFile() ? file : null;
+	}
+
+	private boolean copyToDestination(SimpleArtifactRepository destination, IArtifactDescriptor descriptor, File file) {
+		File target = URIUtil.toFile(destination.getLocation(new ArtifactDescriptor(descriptor)));
+		if (target == null) {
+			return false;
+		}
+		target.getParentFile().mkdirs();
+		try {
+			FileTransfer.transfer(file, target, options.isLinkArtifacts());
+			return true;
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.PLUGIN_ID, "Error copying artifact " + descriptor.getArtifactKey() + " from " + file, e));
+			target.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * @return descriptor of the artifact without processing steps or <code>null</code>
+	 */
+	private static IArtifactDescriptor getCanonicalDescriptor(IArtifactRepository repository, IArtifactKey key) {
+		for (IArtifactDescriptor descriptor : repository.getArtifactDescriptors(key)) {
+			if (descriptor.getProperty(IArtifactDescriptor.FORMAT) == null && descriptor.getProcessingSteps().length == 0) {
+				return descriptor;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Collects the results of the work units submitted by
+	 * {@link #addInstallableUnits(Collection, Collection)}. Most of them are usually finished
+	 * already.
+	 */
+	private MultiStatus waitForArtifacts(SubMonitor monitor) throws InterruptedException {
+		int workUnits;
+		int keys;
+		int skipped;
+		int duplicates;
+		synchronized (this) {
+			workUnits = submittedWorkUnits;
+			keys = submittedKeys;
+			skipped = skippedKeys;
+			duplicates = artifactKeys.getDuplicates();
+		}
+
+		MultiStatus status;
+		if (keys == 0 && skipped > 0) {
+			status = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Nothing to mirror", null);
+		} else {
+			status = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Mirroring " + keys + " artifacts", null);
+		}
+
+		// One tick per artifact, most of them may be mirrored already during the resolution
+		monitor.setWorkRemaining(keys);
+		int reported = 0;
+		int done = 0;
+		while (done < workUnits) {
+			if (monitor.isCanceled()) {
+				throw new InterruptedException();
+			}
+			Future<MultiStatus> future = scheduler.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			if (future != null) {
+				done++;
+				try {
+					status.merge(future.get());
+				} catch (ExecutionException e) {
+					status.add(new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Error mirroring artifacts: " + e.getCause(), e.getCause()));
+				}
+			}
+			int completed = Math.min(keys, progress.getCompletedArtifacts());
+			monitor.worked(completed - reported);
+			reported = completed;
+			String message = progress.getMessage(keys);
+			if (message != null) {
+				monitor.subTask(message);
+			}
+		}
+
+		if (journaledKeys > 0) {
+			status.add(new Status(IStatus.INFO, Activator.PLUGIN_ID, "Resumed an interrupted export, " + journaledKeys + " artifacts were mirrored already"));
+		}
+		if (skipped > 0) {
+			status.add(new Status(IStatus.INFO, Activator.PLUGIN_ID, "Skipped " + skipped + " artifacts already present in the destination repository"));
+		}
+		if (cachedArtifacts.get() > 0) {
+			status.add(new Status(IStatus.INFO, Activator.PLUGIN_ID, "Reused " + cachedArtifacts.get() + " artifacts from the local artifact cache"));
+		}
+		if (localArtifacts.get() > 0) {
+			status.add(new Status(IStatus.INFO, Activator.PLUGIN_ID, "Copied " + localArtifacts.get() + " artifacts directly from local source repositories"));
+		}
+		if (duplicates > 0) {
+			status.add(new Status(IStatus.INFO, Activator.PLUGIN_ID, "Removed " + duplicates + " duplicate artifact references"));
+		}
+		return status;
+	}
+
+	private void compressRepositories() throws MirrorException, InterruptedException {
+		File folder = URIUtil.toFile(destArtifactRepository.getLocation());
+		long begin = metrics.begin();
+		new RepositoryCompressor(folder, destMetadataRepository, destArtifactRepository).compress(options.getCompression());
+		metrics.end(ExportMetrics.PHASE_COMPRESSION, begin);
 	}
 
 	private void mirrorMetadata() {
-		destMetadataRepository.addInstallableUnits(installableUnitSet);
+		flushMetadata();
+		int count;
+		synchronized (this) {
+			count = unitCount;
+		}
+		this.monitor.subTask("Mirrored metadata of " + count + " IUs");
+	}
+
+	/**
+	 * Loads the pending IUs from their source repositories and writes them. Every write saves
+	 * the destination metadata repository.
+	 */
+	private void flushMetadata() {
+		Map<Set<URI>, List<IVersionedId>> references;
+		synchronized (this) {
+			if (pendingUnits.getPendingCount() == 0) {
+				return;
+			}
+			references = pendingUnits.drain();
+		}
+		long begin = metrics.begin();
+		List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+		List<IVersionedId> missing = new ArrayList<IVersionedId>();
+		for (Map.Entry<Set<URI>, List<IVersionedId>> entry : references.entrySet()) {
+			IMetadataRepository sourceRepository = getSourceMetadataRepository(entry.getKey());
+			for (IVersionedId reference : entry.getValue()) {
+				IQueryResult<IInstallableUnit> result = sourceRepository.query(QueryUtil.createIUQuery(reference), null);
+				if (result.isEmpty()) {
+					missing.add(reference);
+				} else {
+					units.add(result.iterator().next());
+				}
+			}
+		}
+		synchronized (this) {
+			missingUnits.addAll(missing);
+		}
+		writeUnits(units, begin);
+	}
+
+	/**
+	 * Writes the IUs into the destination metadata repository
+	 */
+	private void writeUnits(List<IInstallableUnit> units, long begin) {
+		if (units.isEmpty() || !ensureDestination()) {
+			return;
+		}
+		destMetadataRepository.addInstallableUnits(units);
+		metrics.end(ExportMetrics.PHASE_METADATA_WRITE, begin);
+		metrics.increment(ExportMetrics.COUNTER_UNITS, units.size());
+		synchronized (this) {
+			unitCount += units.size();
+		}
 	}
 }
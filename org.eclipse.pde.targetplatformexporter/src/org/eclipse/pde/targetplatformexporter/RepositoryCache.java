@@ -0,0 +1,188 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+
+/**
+ * Plug-in scoped cache of loaded source repositories.
+ * <p>
+ * The repository managers reference loaded repositories only softly and the mirror tool used to
+ * remove them after every export, so back-to-back exports downloaded and parsed the same
+ * repositories again. The cache holds the repositories strongly, so the managers return them
+ * without loading.
+ * <p>
+ * An entry expires after {@link ExportOptions#getRepositoryCacheTimeout()} seconds, the
+ * repository gets refreshed on the next access. The least recently used entries get evicted
+ * if there are more than {@link ExportOptions#getRepositoryCacheSize()} of them or the heap
+ * runs low.
+ */
+public class RepositoryCache {
+	/**
+	 * Maximal heap usage ratio, before the entries get evicted
+	 */
+	private static final double MAX_HEAP_USAGE = 0.75;
+
+	private static RepositoryCache defaultCache;
+
+	private final long timeout;
+	private final int maxEntries;
+	private final Map<IRepositoryManager<?>, Map<URI, Entry>> entries = new HashMap<>();
+
+	private interface Loader {
+		IRepository<?> load(URI location, boolean refresh, IProgressMonitor monitor) throws ProvisionException;
+	}
+
+	private static class Entry {
+		private final IRepository<?> repository;
+		private final long loaded;
+		private long lastAccess;
+
+		Entry(IRepository<?> repository) {
+			this.repository = repository;
+			this.loaded = System.currentTimeMillis();
+			this.lastAccess = loaded;
+		}
+	}
+
+	/**
+	 * @param timeout time to live of an entry in seconds
+	 * @param maxEntries maximal number of cached repositories
+	 */
+	public RepositoryCache(long timeout, int maxEntries) {
+		this.timeout = TimeUnit.SECONDS.toMillis(timeout);
+		this.maxEntries = maxEntries;
+	}
+
+	public static synchronized RepositoryCache getDefault(ExportOptions options) {
+		if (defaultCache == null || defaultCache.maxEntries != options.getRepositoryCacheSize()
+				|| defaultCache.timeout != TimeUnit.SECONDS.toMillis(options.getRepositoryCacheTimeout())) {
+			if (defaultCache != null) {
+				defaultCache.clear();
+			}
+			defaultCache = new RepositoryCache(options.getRepositoryCacheTimeout(), options.getRepositoryCacheSize());
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * Releases the repositories of the default cache. Called when the bundle stops.
+	 */
+	static synchronized void disposeDefault() {
+		if (defaultCache != null) {
+			defaultCache.clear();
+			defaultCache = null;
+		}
+	}
+
+	/**
+	 * Loads an artifact repository or returns the cached one.
+	 */
+	public IArtifactRepository loadRepository(final IArtifactRepositoryManager manager, URI location, IProgressMonitor monitor) throws ProvisionException {
+		return (IArtifactRepository) loadRepository(manager, location, monitor, new Loader() {
+			@Override
+			public IRepository<?> load(URI location, boolean refresh, IProgressMonitor monitor) throws ProvisionException {
+				return refresh ? manager.refreshRepository(location, monitor) : manager.loadRepository(location, monitor);
+			}
+		});
+	}
+
+	/**
+	 * Loads a metadata repository or returns the cached one.
+	 */
+	public IMetadataRepository loadRepository(final IMetadataRepositoryManager manager, URI location, IProgressMonitor monitor) throws ProvisionException {
+		return (IMetadataRepository) loadRepository(manager, location, monitor, new Loader() {
+			@Override
+			public IRepository<?> load(URI location, boolean refresh, IProgressMonitor monitor) throws ProvisionException {
+				return refresh ? manager.refreshRepository(location, monitor) : manager.loadRepository(location, monitor);
+			}
+		});
+	}
+
+	private IRepository<?> loadRepository(IRepositoryManager<?> manager, URI location, IProgressMonitor monitor, Loader loader) throws ProvisionException {
+		boolean expired = false;
+		synchronized (this) {
+			Entry entry = getEntries(manager).get(location);
+			if (entry != null) {
+				if (System.currentTimeMillis() - entry.loaded < timeout) {
+					entry.lastAccess = System.currentTimeMillis();
+					return entry.repository;
+				}
+				getEntries(manager).remove(location);
+				expired = true;
+			}
+		}
+
+		// Loaded outside of the lock, the repositories may be remote
+		IRepository<?> repository = loader.load(location, expired, monitor);
+		synchronized (this) {
+			getEntries(manager).put(location, new Entry(repository));
+			evict();
+		}
+		return repository;
+	}
+
+	/**
+	 * Releases all cached repositories
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	private Map<URI, Entry> getEntries(IRepositoryManager<?> manager) {
+		Map<URI, Entry> managerEntries = entries.get(manager);
+		if (managerEntries == null) {
+			managerEntries = new LinkedHashMap<>();
+			entries.put(manager, managerEntries);
+		}
+		return managerEntries;
+	}
+
+	private void evict() {
+		while (size() > maxEntries || (size() > 1 && isHeapLow())) {
+			Map<URI, Entry> eldestEntries = null;
+			URI eldest = null;
+			long eldestAccess = Long.MAX_VALUE;
+			for (Map<URI, Entry> managerEntries : entries.values()) {
+				for (Map.Entry<URI, Entry> entry : managerEntries.entrySet()) {
+					if (entry.getValue().lastAccess < eldestAccess) {
+						eldestEntries = managerEntries;
+						eldest = entry.getKey();
+						eldestAccess = entry.getValue().lastAccess;
+					}
+				}
+			}
+			eldestEntries.remove(eldest);
+		}
+		for (Iterator<Map<URI, Entry>> iterator = entries.values().iterator(); iterator.hasNext();) {
+			if (iterator.next().isEmpty()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private int size() {
+		int size = 0;
+		for (Map<URI, Entry> managerEntries : entries.values()) {
+			size += managerEntries.size();
+		}
+		return size;
+	}
+
+	private static boolean isHeapLow() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory() > runtime.maxMemory() * MAX_HEAP_USAGE;
+	}
+}
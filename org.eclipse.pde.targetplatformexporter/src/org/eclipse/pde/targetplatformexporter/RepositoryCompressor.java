@@ -0,0 +1,135 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * Writes the final indexes of the destination repository in the selected {@link Compression}.
+ * <p>
+ * The mirror tool keeps the indexes uncompressed during the export, so the many intermediate
+ * saves of the repositories don't compress them again and again. The indexes get compressed
+ * only once at the end, the metadata and the artifact index concurrently.
+ */
+class RepositoryCompressor {
+	private static final String CONTENT_XML = "content.xml"; //$NON-NLS-1$
+	private static final String ARTIFACTS_XML = "artifacts.xml"; //$NON-NLS-1$
+	private static final String XZ_EXTENSION = ".xz"; //$NON-NLS-1$
+	private static final String P2_INDEX = "p2.index"; //$NON-NLS-1$
+	private static final String P2_INDEX_CONTENT = "version=1\n" //$NON-NLS-1$
+			+ "metadata.repository.factory.order=content.xml.xz,content.xml,\\!\n" //$NON-NLS-1$
+			+ "artifact.repository.factory.order=artifacts.xml.xz,artifacts.xml,\\!\n"; //$NON-NLS-1$
+
+	private final File folder;
+	private final IMetadataRepository metadataRepository;
+	private final IArtifactRepository artifactRepository;
+
+	RepositoryCompressor(File folder, IMetadataRepository metadataRepository, IArtifactRepository artifactRepository) {
+		this.folder = folder;
+		this.metadataRepository = metadataRepository;
+		this.artifactRepository = artifactRepository;
+	}
+
+	void compress(Compression compression) throws MirrorException, InterruptedException {
+		List<Callable<Void>> tasks = new ArrayList<>();
+		switch (compression) {
+		case JAR:
+			// The repositories write the jars themselves on the next save
+			tasks.add(setCompressed(metadataRepository));
+			tasks.add(setCompressed(artifactRepository));
+			deleteXZIndexes();
+			break;
+		case XZ:
+			tasks.add(writeXZ(CONTENT_XML));
+			tasks.add(writeXZ(ARTIFACTS_XML));
+			break;
+		default:
+			deleteXZIndexes();
+			break;
+		}
+		if (tasks.isEmpty()) {
+			return;
+		}
+
+		// One thread per index, the indexes are written as single streams
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size(), new NamedThreadFactory("Repository compression")); //$NON-NLS-1$
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw new MirrorException("Error compressing the destination repository: " + e.getCause(), e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if (compression == Compression.XZ) {
+			try {
+				Files.write(new File(folder, P2_INDEX).toPath(), P2_INDEX_CONTENT.getBytes(StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				throw new MirrorException("Error writing " + P2_INDEX + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private static Callable<Void> setCompressed(final IRepository<?> repository) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				repository.setProperty(IRepository.PROP_COMPRESSED, Boolean.TRUE.toString());
+				return null;
+			}
+		};
+	}
+
+	private Callable<Void> writeXZ(final String fileName) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				File source = new File(folder, fileName);
+				File target = new File(folder, fileName + XZ_EXTENSION);
+				File tempFile = new File(folder, fileName + XZ_EXTENSION + ".tmp"); //$NON-NLS-1$
+				try (InputStream in = new BufferedInputStream(Files.newInputStream(source.toPath()));
+						OutputStream out = new XZOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())), new LZMA2Options())) {
+					byte[] buffer = new byte[64 * 1024];
+					int read;
+					while ((read = in.read(buffer)) >= 0) {
+						out.write(buffer, 0, read);
+					}
+				}
+				Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Deletes the XZ indexes of a previous export, they would shadow the new indexes. The
+	 * <code>p2.index</code> lists only the XZ and the XML indexes, without it p2 probes all
+	 * formats.
+	 */
+	private void deleteXZIndexes() {
+		new File(folder, CONTENT_XML + XZ_EXTENSION).delete();
+		new File(folder, ARTIFACTS_XML + XZ_EXTENSION).delete();
+		new File(folder, P2_INDEX).delete();
+	}
+}
@@ -0,0 +1,229 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+
+/**
+ * Loads the artifact and the metadata repositories of the sources concurrently, before they are
+ * added to the composites of the mirror tool. The composites load their children one after
+ * another, a preloaded child is returned by the repository manager (or the
+ * {@link RepositoryCache}) right away.
+ * <p>
+ * A load running longer than {@link ExportOptions#getRepositoryLoadTimeout()} seconds gets
+ * canceled. Repositories that failed to load are reported by {@link #getStatus()} and must not
+ * be added to the composites, they would be loaded again serially.
+ * <p>
+ * Every repository is loaded only once, callers needing a repository being loaded by another
+ * caller wait for that load. No lock is held while waiting, so the load state of the other
+ * repositories can be queried meanwhile.
+ */
+class RepositoryPreloader {
+	private static final long POLL_INTERVAL = 100;
+
+	private final IArtifactRepositoryManager artifactRepositoryManager;
+	private final IMetadataRepositoryManager metadataRepositoryManager;
+	private final RepositoryCache repositoryCache;
+	private final ExportOptions options;
+	private final ExportMetrics metrics;
+	private final ExecutorService executor;
+	private final ConcurrentMap<String, Load> loads = new ConcurrentHashMap<>();
+	private final Set<URI> failedArtifactRepositories = ConcurrentHashMap.newKeySet();
+	private final Set<URI> failedMetadataRepositories = ConcurrentHashMap.newKeySet();
+	private final MultiStatus status = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Loading source repositories", null);
+
+	/**
+	 * Progress monitor of a single load, canceled on timeout
+	 */
+	private static class LoadMonitor extends NullProgressMonitor {
+		private volatile long start;
+	}
+
+	/**
+	 * A single repository load
+	 */
+	private class Load {
+		final URI location;
+		final boolean artifacts;
+		final LoadMonitor monitor = new LoadMonitor();
+		final FutureTask<Void> future = new FutureTask<>(createTask());
+		private boolean finished;
+
+		Load(URI location, boolean artifacts) {
+			this.location = location;
+			this.artifacts = artifacts;
+		}
+
+		private Callable<Void> createTask() {
+			return new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					monitor.start = System.nanoTime();
+					if (artifacts && repositoryCache != null) {
+						repositoryCache.loadRepository(artifactRepositoryManager, location, monitor);
+					} else if (artifacts) {
+						artifactRepositoryManager.loadRepository(location, monitor);
+					} else if (repositoryCache != null) {
+						repositoryCache.loadRepository(metadataRepositoryManager, location, monitor);
+					} else {
+						metadataRepositoryManager.loadRepository(location, monitor);
+					}
+					metrics.repositoryLoaded(location, monitor.start);
+					return null;
+				}
+			};
+		}
+
+		/**
+		 * Records the result of the load, cancels it on timeout. Called by all callers waiting
+		 * for the load, only the first one records the result.
+		 *
+		 * @return <code>true</code> - the load is finished
+		 */
+		synchronized boolean check(long now) {
+			if (finished) {
+				return true;
+			}
+			if (future.isDone()) {
+				finished = true;
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					failed(String.valueOf(e.getCause().getMessage()), e.getCause());
+				} catch (CancellationException e) {
+					failed("canceled", null);
+				} catch (InterruptedException e) {
+					// Not thrown, the load is done
+					Thread.currentThread().interrupt();
+				}
+				return true;
+			}
+			long start = monitor.start;
+			if (start != 0 && now - start > TimeUnit.SECONDS.toNanos(options.getRepositoryLoadTimeout())) {
+				finished = true;
+				monitor.setCanceled(true);
+				future.cancel(true);
+				failed("timed out after " + options.getRepositoryLoadTimeout() + " seconds", null);
+				return true;
+			}
+			return false;
+		}
+
+		private void failed(String message, Throwable exception) {
+			(artifacts ? failedArtifactRepositories : failedMetadataRepositories).add(location);
+			synchronized (status) {
+				status.add(new Status(IStatus.WARNING, Activator.PLUGIN_ID, "Error loading " + (artifacts ? "artifact" : "metadata") + " repository " + location + ": " + message, exception));
+			}
+		}
+	}
+
+	/**
+	 * @param repositoryCache <code>null</code> - load through the managers
+	 */
+	RepositoryPreloader(IArtifactRepositoryManager artifactRepositoryManager, IMetadataRepositoryManager metadataRepositoryManager, RepositoryCache repositoryCache, ExportOptions options, ExportMetrics metrics) {
+		this.artifactRepositoryManager = artifactRepositoryManager;
+		this.metadataRepositoryManager = metadataRepositoryManager;
+		this.repositoryCache = repositoryCache;
+		this.options = options;
+		this.metrics = metrics;
+		this.executor = Executors.newFixedThreadPool(options.getRepositoryLoadThreads(), new NamedThreadFactory("Repository preload")); //$NON-NLS-1$
+	}
+
+	/**
+	 * Loads the repositories not loaded by the previous calls and waits for them, also for the
+	 * ones started by concurrent calls
+	 */
+	void preload(Collection<URI> locations) throws InterruptedException {
+		List<Load> pending = new ArrayList<>();
+		for (URI location : locations) {
+			pending.add(getLoad(location, true));
+			pending.add(getLoad(location, false));
+		}
+		while (!pending.isEmpty()) {
+			long now = System.nanoTime();
+			for (Iterator<Load> iterator = pending.iterator(); iterator.hasNext();) {
+				if (iterator.next().check(now)) {
+					iterator.remove();
+				}
+			}
+			if (!pending.isEmpty()) {
+				Thread.sleep(POLL_INTERVAL);
+			}
+		}
+	}
+
+	/**
+	 * @return <code>false</code> - the artifact repository failed to load
+	 */
+	boolean isArtifactRepositoryLoaded(URI location) {
+		return !failedArtifactRepositories.contains(location);
+	}
+
+	/**
+	 * @return <code>false</code> - the metadata repository failed to load
+	 */
+	boolean isMetadataRepositoryLoaded(URI location) {
+		return !failedMetadataRepositories.contains(location);
+	}
+
+	/**
+	 * @return status with a warning for every repository, that failed to load. Must be called
+	 *         after the last {@link #preload(Collection)} returned.
+	 */
+	MultiStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * Cancels the running loads
+	 */
+	void shutdownNow() {
+		executor.shutdownNow();
+		for (Load load : loads.values()) {
+			load.monitor.setCanceled(true);
+			load.future.cancel(true);
+		}
+	}
+
+	/**
+	 * @return load of the repository, started by the first call
+	 */
+	private Load getLoad(URI location, boolean artifacts) {
+		String key = (artifacts ? "artifacts:" : "metadata:") + location; //$NON-NLS-1$ //$NON-NLS-2$
+		Load load = loads.get(key);
+		if (load == null) {
+			Load newLoad = new Load(location, artifacts);
+			load = loads.putIfAbsent(key, newLoad);
+			if (load == null) {
+				load = newLoad;
+				try {
+					executor.execute(load.future);
+				} catch (RejectedExecutionException e) {
+					// Shut down concurrently, reported as canceled
+					load.future.cancel(true);
+				}
+			}
+		}
+		return load;
+	}
+}
@@ -0,0 +1,323 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.ICompositeRepository;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.pde.internal.core.target.P2TargetUtils;
+import org.eclipse.pde.targetplatformexporter.wizards.ExportConfiguration;
+
+/**
+ * Persistent cache of resolved target IU sets.
+ * <p>
+ * The cache key is a hash of the target definition content, the export configuration and the
+ * timestamps of the source repositories. The cached value is the set of the resolved IUs (as
+ * id/version references) and the set of the repository URIs. On a cache hit the IUs get loaded
+ * from the repositories, so the planner doesn't run at all.
+ * <p>
+ * The number of the cached resolutions is bounded, the least recently used entries get evicted.
+ */
+@SuppressWarnings("restriction")
+public class ResolutionCache {
+	private static final String FILE_EXTENSION = ".resolution"; //$NON-NLS-1$
+	private static final String REPOSITORY = "repository "; //$NON-NLS-1$
+	private static final String UNIT = "unit "; //$NON-NLS-1$
+	private static final int MAX_COMPOSITE_DEPTH = 4;
+	private static final String[] METADATA_INDEXES = { "content.jar", "content.xml", "content.xml.xz", "compositeContent.jar", "compositeContent.xml" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+	private static ResolutionCache defaultCache;
+
+	private final File directory;
+	private final int maxEntries;
+	private RepositoryCache repositoryCache;
+
+	/**
+	 * Cached resolution of a target &times; configuration combination
+	 */
+	public static class Entry {
+		private final Set<URI> repositories;
+		private final Set<IInstallableUnit> installableUnits;
+
+		Entry(Set<URI> repositories, Set<IInstallableUnit> installableUnits) {
+			this.repositories = repositories;
+			this.installableUnits = installableUnits;
+		}
+
+		public Set<URI> getRepositories() {
+			return repositories;
+		}
+
+		public Set<IInstallableUnit> getInstallableUnits() {
+			return installableUnits;
+		}
+	}
+
+	public ResolutionCache(File directory, int maxEntries) {
+		this.directory = directory;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @return cache in the state location of the plug-in
+	 */
+	public static synchronized ResolutionCache getDefault(ExportOptions options) {
+		if (defaultCache == null || defaultCache.maxEntries != options.getResolutionCacheSize()) {
+			File directory = Activator.getDefault().getStateLocation().append("resolution-cache").toFile(); //$NON-NLS-1$
+			defaultCache = new ResolutionCache(directory, options.getResolutionCacheSize());
+		}
+		defaultCache.setRepositoryCache(options.isRepositoryCache() ? RepositoryCache.getDefault(options) : null);
+		return defaultCache;
+	}
+
+	/**
+	 * @param repositoryCache cache of the repositories to load the cached IUs from, may be
+	 *            <code>null</code>
+	 */
+	public synchronized void setRepositoryCache(RepositoryCache repositoryCache) {
+		this.repositoryCache = repositoryCache;
+	}
+
+	/**
+	 * Computes the cache key of a combination. Loads the repositories to get their timestamps.
+	 * Local repositories without a timestamp are stamped with the sizes and the modification
+	 * times of their metadata indexes.
+	 *
+	 * @param content content of the target definition
+	 * @param mode resolution mode, that affects the result
+	 * @return <code>null</code> - some repository couldn't be loaded or has no stamp, the
+	 *         combination can't be cached
+	 */
+	public String computeKey(byte[] content, String mode, ExportConfiguration configuration, Set<URI> repositories, IProgressMonitor monitor) throws CoreException {
+		Map<String, String> stamps = new TreeMap<>();
+		SubMonitor subMonitor = SubMonitor.convert(monitor, repositories.size());
+		IMetadataRepositoryManager manager = P2TargetUtils.getRepoManager();
+		try {
+			for (URI uri : repositories) {
+				if (!addRepositoryStamps(manager, uri, stamps, 0, subMonitor.newChild(1))) {
+					return null;
+				}
+			}
+		} catch (ProvisionException e) {
+			return null;
+		}
+
+		MessageDigest digest = createDigest();
+		digest.update(content);
+		update(digest, mode);
+		update(digest, configuration.toString());
+		for (Map.Entry<String, String> stamp : stamps.entrySet()) {
+			update(digest, stamp.getKey() + "=" + stamp.getValue()); //$NON-NLS-1$
+		}
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(String.format("%02x", b)); //$NON-NLS-1$
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return <code>false</code> - the repository or one of its children has no stamp
+	 */
+	private static boolean addRepositoryStamps(IMetadataRepositoryManager manager, URI uri, Map<String, String> stamps, int depth, IProgressMonitor monitor) throws ProvisionException {
+		IMetadataRepository repository = manager.loadRepository(uri, monitor);
+		String stamp = repository.getProperty(IRepository.PROP_TIMESTAMP);
+		if (stamp == null) {
+			stamp = getLocalStamp(uri);
+			if (stamp == null) {
+				return false;
+			}
+		}
+		stamps.put(uri.toString(), stamp);
+		if (repository instanceof ICompositeRepository<?> && depth < MAX_COMPOSITE_DEPTH) {
+			for (URI child : ((ICompositeRepository<?>) repository).getChildren()) {
+				if (!addRepositoryStamps(manager, uri.resolve(child), stamps, depth + 1, null)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return sizes and modification times of the metadata indexes of a local repository,
+	 *         <code>null</code> - remote repository or no index found
+	 */
+	private static String getLocalStamp(URI uri) {
+		File folder = URIUtil.toFile(uri);
+		if (folder == null) {
+			return null;
+		}
+		StringBuilder stamp = new StringBuilder();
+		for (String name : METADATA_INDEXES) {
+			File file = new File(folder, name);
+			if (file.isFile()) {
+				stamp.append(name).append(':').append(file.length()).append(':').append(file.lastModified()).append(';');
+			}
+		}
+		return stamp.length() > 0 ? stamp.toString() : null;
+	}
+
+	/**
+	 * @return <code>null</code> - not cached or some cached IUs are not available anymore
+	 */
+	public Entry get(String key, IProgressMonitor monitor) throws CoreException {
+		File file = getFile(key);
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return null;
+		}
+		file.setLastModified(System.currentTimeMillis());
+
+		Set<URI> repositories = new HashSet<>();
+		List<String> units = new ArrayList<>();
+		try {
+			for (String line : lines) {
+				if (line.startsWith(REPOSITORY)) {
+					repositories.add(new URI(line.substring(REPOSITORY.length())));
+				} else if (line.startsWith(UNIT)) {
+					units.add(line.substring(UNIT.length()));
+				}
+			}
+		} catch (URISyntaxException e) {
+			return null;
+		}
+
+		SubMonitor subMonitor = SubMonitor.convert(monitor, repositories.size() + units.size());
+		IMetadataRepositoryManager manager = P2TargetUtils.getRepoManager();
+		List<IMetadataRepository> metadataRepositories = new ArrayList<>();
+		RepositoryCache repositoryCache;
+		synchronized (this) {
+			repositoryCache = this.repositoryCache;
+		}
+		try {
+			for (URI uri : repositories) {
+				if (repositoryCache != null) {
+					metadataRepositories.add(repositoryCache.loadRepository(manager, uri, subMonitor.newChild(1)));
+				} else {
+					metadataRepositories.add(manager.loadRepository(uri, subMonitor.newChild(1)));
+				}
+			}
+		} catch (ProvisionException e) {
+			return null;
+		}
+
+		IQueryable<IInstallableUnit> queryable = QueryUtil.compoundQueryable(metadataRepositories);
+		Set<IInstallableUnit> installableUnits = new HashSet<>();
+		for (String unit : units) {
+			int separator = unit.lastIndexOf(' ');
+			IQueryResult<IInstallableUnit> result = queryable.query(QueryUtil.createIUQuery(unit.substring(0, separator), Version.create(unit.substring(separator + 1))), subMonitor.newChild(1));
+			if (result.isEmpty()) {
+				return null;
+			}
+			installableUnits.add(result.iterator().next());
+		}
+		return new Entry(repositories, installableUnits);
+	}
+
+	public synchronized void put(String key, Set<IInstallableUnit> installableUnits, Set<URI> repositories) {
+		directory.mkdirs();
+		File file = getFile(key);
+		File tempFile = new File(directory, key + ".tmp"); //$NON-NLS-1$
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+				for (URI uri : repositories) {
+					writer.write(REPOSITORY + uri);
+					writer.newLine();
+				}
+				for (IInstallableUnit unit : installableUnits) {
+					writer.write(UNIT + unit.getId() + " " + unit.getVersion()); //$NON-NLS-1$
+					writer.newLine();
+				}
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Activator.log(e);
+			tempFile.delete();
+		}
+		evict();
+	}
+
+	/**
+	 * Removes all cached resolutions
+	 */
+	public synchronized void clear() {
+		for (File file : getEntries()) {
+			file.delete();
+		}
+	}
+
+	private void evict() {
+		File[] files = getEntries();
+		if (files.length <= maxEntries) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File file1, File file2) {
+				return Long.compare(file1.lastModified(), file2.lastModified());
+			}
+		});
+		for (int i = 0; i < files.length - maxEntries; i++) {
+			files[i].delete();
+		}
+	}
+
+	private File[] getEntries() {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(FILE_EXTENSION);
+			}
+		});
+		return files != null ? files : new File[0];
+	}
+
+	private File getFile(String key) {
+		return new File(directory, key + FILE_EXTENSION);
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String string) {
+		digest.update(string.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) '\n');
+	}
+}
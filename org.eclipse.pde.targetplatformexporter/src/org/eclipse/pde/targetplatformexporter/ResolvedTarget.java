@@ -0,0 +1,103 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Set;
+
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.pde.core.target.ITargetDefinition;
+import org.eclipse.pde.targetplatformexporter.wizards.ExportConfiguration;
+
+/**
+ * Result of the resolution of a single target &times; configuration combination.
+ */
+public class ResolvedTarget {
+	private final String name;
+	private final ExportConfiguration configuration;
+	private final ITargetDefinition targetDefinition;
+	private Set<IInstallableUnit> installableUnits = Collections.emptySet();
+	private Set<URI> repositories = Collections.emptySet();
+	private Owner owner;
+
+	/**
+	 * Keeps the resolved target definition and its p2 profile
+	 */
+	interface Owner {
+		void retain();
+
+		void release();
+	}
+
+	public ResolvedTarget(String name, ExportConfiguration configuration, ITargetDefinition targetDefinition) {
+		this.name = name;
+		this.configuration = configuration;
+		this.targetDefinition = targetDefinition;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ExportConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * @return resolved target definition. In the {@link ExportOptions#isResolveOnce()} mode
+	 *         the definition resolved for all platforms, shared by all configurations.
+	 *         <code>null</code> - the IUs were taken from the {@link ResolutionCache}.
+	 */
+	public ITargetDefinition getTargetDefinition() {
+		return targetDefinition;
+	}
+
+	/**
+	 * Keeps the target definition and its p2 profile valid after the listener returned, until
+	 * {@link #release()} gets called.
+	 */
+	public void retain() {
+		if (owner != null) {
+			owner.retain();
+		}
+	}
+
+	/**
+	 * Releases the target definition retained by {@link #retain()}
+	 */
+	public void release() {
+		if (owner != null) {
+			owner.release();
+		}
+	}
+
+	void setOwner(Owner owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * @return resolved IUs. Empty, if the resolver doesn't collect IUs.
+	 */
+	public Set<IInstallableUnit> getInstallableUnits() {
+		return installableUnits;
+	}
+
+	void setInstallableUnits(Set<IInstallableUnit> installableUnits) {
+		this.installableUnits = installableUnits;
+	}
+
+	/**
+	 * @return repositories of the IU locations of the target. Empty, if the resolver doesn't collect IUs.
+	 */
+	public Set<URI> getRepositories() {
+		return repositories;
+	}
+
+	void setRepositories(Set<URI> repositories) {
+		this.repositories = repositories;
+	}
+
+	@Override
+	public String toString() {
+		return name + " [" + configuration + "]";
+	}
+}
@@ -0,0 +1,87 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.pde.targetplatformexporter.wizards.ExportConfiguration;
+
+/**
+ * Graph of the target &times; configuration combinations and the unique (location, unit,
+ * platform) nodes they consist of.
+ * <p>
+ * Every node is resolved only once, also if it is shared by several targets. The IUs of a
+ * resolved node are merged into all combinations depending on it and released, a combination
+ * is complete as soon as all its nodes are resolved.
+ */
+class TargetGraph {
+	private final Map<String, List<Plan>> dependents = new HashMap<>();
+
+	/**
+	 * Merged result of a target &times; configuration combination
+	 */
+	private static class Plan {
+		final String name;
+		final ExportConfiguration configuration;
+		final Set<IInstallableUnit> units = new HashSet<>();
+		final Set<URI> repositories = new HashSet<>();
+		int remaining;
+
+		Plan(String name, ExportConfiguration configuration) {
+			this.name = name;
+			this.configuration = configuration;
+		}
+	}
+
+	/**
+	 * @param nodeKeys keys of the nodes of the target, without duplicates
+	 */
+	synchronized void addTarget(String name, ExportConfiguration configuration, Collection<String> nodeKeys) {
+		Plan plan = new Plan(name, configuration);
+		plan.remaining = nodeKeys.size();
+		for (String nodeKey : nodeKeys) {
+			String key = getKey(nodeKey, configuration);
+			List<Plan> plans = dependents.get(key);
+			if (plans == null) {
+				plans = new ArrayList<>();
+				dependents.put(key, plans);
+			}
+			plans.add(plan);
+		}
+	}
+
+	/**
+	 * Merges the IUs of a resolved node into the combinations depending on it.
+	 *
+	 * @param resolvedNode IUs of the node for a single configuration
+	 * @return combinations completed by the node
+	 */
+	synchronized List<ResolvedTarget> nodeResolved(String nodeKey, ResolvedTarget resolvedNode) {
+		List<ResolvedTarget> completed = new ArrayList<>();
+		List<Plan> plans = dependents.remove(getKey(nodeKey, resolvedNode.getConfiguration()));
+		if (plans == null) {
+			return completed;
+		}
+		for (Plan plan : plans) {
+			plan.units.addAll(resolvedNode.getInstallableUnits());
+			plan.repositories.addAll(resolvedNode.getRepositories());
+			if (--plan.remaining == 0) {
+				ResolvedTarget target = new ResolvedTarget(plan.name, plan.configuration, null);
+				target.setInstallableUnits(plan.units);
+				target.setRepositories(plan.repositories);
+				completed.add(target);
+			}
+		}
+		return completed;
+	}
+
+	private static String getKey(String nodeKey, ExportConfiguration configuration) {
+		return nodeKey + '@' + configuration;
+	}
+}
@@ -0,0 +1,229 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.core.runtime.jobs.JobGroup;
+import org.eclipse.pde.core.target.ITargetHandle;
+import org.eclipse.pde.internal.core.target.ExportTargetJob;
+import org.eclipse.pde.targetplatformexporter.wizards.ExportConfiguration;
+
+/**
+ * Resolves target definitions for a set of configurations and exports them either into a p2
+ * mirror repository or as plug-ins.
+ * <p>
+ * Used by the export wizard and the headless {@link ExportApplication}.
+ */
+@SuppressWarnings("restriction")
+public class TargetPlatformExporter {
+	private static final String STAGING_FOLDER_PREFIX = ".export-"; //$NON-NLS-1$
+
+	private final List<ITargetHandle> targetHandles;
+	private final List<ExportConfiguration> configurations;
+	private final String destination;
+	private final ExportOptions options;
+	private boolean p2Mirror = true;
+
+	public TargetPlatformExporter(List<ITargetHandle> targetHandles, List<ExportConfiguration> configurations, String destination, ExportOptions options) {
+		this.targetHandles = targetHandles;
+		this.configurations = configurations;
+		this.destination = destination;
+		this.options = options;
+	}
+
+	/**
+	 * @param p2Mirror <code>true</code> - create p2 mirror repository, <code>false</code> - export plug-ins
+	 */
+	public void setP2Mirror(boolean p2Mirror) {
+		this.p2Mirror = p2Mirror;
+	}
+
+	public MultiStatus export(IProgressMonitor monitor) throws CoreException, MirrorException, InterruptedException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, "Resolving and exporting target platform(s)", p2Mirror ? 3 : 2);
+
+		final MultiStatus status = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Exporting target platform(s)", null);
+		final ExportMetrics metrics = new ExportMetrics();
+
+		// The IUs and artifacts are mirrored as soon as a target is resolved
+		final P2MirrorTool p2MirrorTool = p2Mirror ? new P2MirrorTool(destination, options) : null;
+		final MirrorJournal journal = p2Mirror ? new MirrorJournal(destination) : null;
+		final JobGroup exportJobs = p2Mirror ? null : new JobGroup("Exporting target platform(s)", options.getExportJobs(), 0);
+		final List<File> stagingFolders = new ArrayList<>();
+		try {
+			if (p2MirrorTool != null) {
+				p2MirrorTool.setJournal(journal);
+				p2MirrorTool.setMetrics(metrics);
+				p2MirrorTool.open(subMonitor.newChild(1));
+			} else {
+				deleteStagingFolders();
+			}
+			resolve(subMonitor.newChild(1), p2MirrorTool, journal, metrics, exportJobs, stagingFolders);
+			if (p2MirrorTool != null) {
+				status.merge(p2MirrorTool.close(subMonitor.newChild(1)));
+				if (status.getSeverity() < IStatus.ERROR) {
+					journal.complete();
+				}
+			} else {
+				long begin = metrics.begin();
+				status.merge(joinExportJobs(exportJobs, stagingFolders, subMonitor.newChild(1)));
+				metrics.end(ExportMetrics.PHASE_PLUGIN_EXPORT, begin);
+			}
+		} finally {
+			writeMetrics(metrics);
+			if (p2MirrorTool != null) {
+				p2MirrorTool.dispose();
+				// Kept for the next export, if not completed
+				journal.close();
+			} else {
+				// Does nothing, if the jobs are done. Staging folders of the canceled jobs get
+				// cleared by the next export.
+				exportJobs.cancel();
+			}
+		}
+		return status;
+	}
+
+	private void resolve(IProgressMonitor monitor, final P2MirrorTool p2MirrorTool, MirrorJournal journal, ExportMetrics metrics, final JobGroup exportJobs, final List<File> stagingFolders) throws CoreException, InterruptedException {
+		TargetResolver resolver = new TargetResolver(targetHandles, configurations, options);
+		resolver.setCollectUnits(p2Mirror);
+		resolver.setMetrics(metrics);
+		if (p2Mirror && options.isResolutionCache()) {
+			resolver.setCache(ResolutionCache.getDefault(options));
+		}
+		if (journal != null) {
+			resolver.setJournal(journal.getResolutions());
+		}
+		resolver.resolve(monitor, new ITargetResolutionListener() {
+			@Override
+			public void targetResolved(ResolvedTarget target, IProgressMonitor monitor) throws CoreException, InterruptedException {
+				if (p2MirrorTool != null) {
+					p2MirrorTool.addInstallableUnits(target.getInstallableUnits(), target.getRepositories());
+				} else {
+					runExportJob(target, exportJobs, stagingFolders);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the metrics report into the destination folder, also if the export failed
+	 */
+	private void writeMetrics(ExportMetrics metrics) {
+		try {
+			metrics.write(new File(destination, ExportMetrics.REPORT_FILE));
+		} catch (IOException e) {
+			Activator.log(e);
+		}
+	}
+
+	/**
+	 * Every job exports into an own staging folder, so the jobs don't overwrite the files of
+	 * each other. The staging folders get merged after all jobs are done.
+	 * <p>
+	 * The job reads the p2 profile of the resolved target, so the target is retained until the
+	 * job is done. The jobs run concurrently up to {@link ExportOptions#getExportJobs()}.
+	 */
+	private void runExportJob(final ResolvedTarget target, JobGroup exportJobs, List<File> stagingFolders) {
+		File stagingFolder;
+		synchronized (stagingFolders) {
+			stagingFolder = new File(destination, STAGING_FOLDER_PREFIX + stagingFolders.size());
+			stagingFolders.add(stagingFolder);
+		}
+		Job job = new ExportTargetJob(target.getTargetDefinition(), stagingFolder.toURI(), true);
+		job.setRule(new FolderRule(stagingFolder));
+		job.setJobGroup(exportJobs);
+		target.retain();
+		job.addJobChangeListener(new JobChangeAdapter() {
+			@Override
+			public void done(IJobChangeEvent event) {
+				target.release();
+			}
+		});
+		job.schedule();
+	}
+
+	/**
+	 * Deletes the staging folders left by a canceled export
+	 */
+	private void deleteStagingFolders() {
+		File[] files = new File(destination).listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory() && file.getName().startsWith(STAGING_FOLDER_PREFIX)) {
+				delete(file);
+			}
+		}
+	}
+
+	private MultiStatus joinExportJobs(JobGroup exportJobs, List<File> stagingFolders, IProgressMonitor monitor) throws InterruptedException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, stagingFolders.size() + 1);
+		subMonitor.subTask("Waiting for " + stagingFolders.size() + " export job(s)");
+		try {
+			exportJobs.join(0, subMonitor.newChild(1));
+		} catch (OperationCanceledException e) {
+			throw new InterruptedException();
+		}
+
+		MultiStatus status = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, "Exporting plug-ins", null);
+		if (exportJobs.getResult() != null) {
+			status.merge(exportJobs.getResult());
+		}
+		File destinationFolder = new File(destination);
+		for (File stagingFolder : stagingFolders) {
+			subMonitor.subTask("Merging " + stagingFolder.getName());
+			try {
+				merge(stagingFolder, destinationFolder);
+			} catch (IOException e) {
+				status.add(new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Error merging " + stagingFolder + ": " + e.getMessage(), e));
+			}
+			subMonitor.worked(1);
+		}
+		return status;
+	}
+
+	/**
+	 * Moves the files into the destination folder, replacing the files of a previous export
+	 */
+	private static void merge(File source, File destination) throws IOException {
+		File[] files = source.listFiles();
+		if (files == null) {
+			return;
+		}
+		destination.mkdirs();
+		for (File file : files) {
+			File target = new File(destination, file.getName());
+			if (file.isDirectory()) {
+				merge(file, target);
+			} else {
+				Files.move(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		delete(source);
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,610 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.pde.core.target.ITargetDefinition;
+import org.eclipse.pde.core.target.ITargetHandle;
+import org.eclipse.pde.core.target.ITargetLocation;
+import org.eclipse.pde.core.target.ITargetPlatformService;
+import org.eclipse.pde.internal.core.PDECore;
+import org.eclipse.pde.internal.core.target.IUBundleContainer;
+import org.eclipse.pde.internal.core.target.P2TargetUtils;
+import org.eclipse.pde.internal.core.target.TargetDefinitionPersistenceHelper;
+import org.eclipse.pde.targetplatformexporter.wizards.ExportConfiguration;
+
+/**
+ * Resolves every target &times; configuration combination on a bounded pool of worker threads.
+ * <p>
+ * Each combination gets its own copy of the target definition and so its own p2 profile. The
+ * copy is created from the serialized target right before the resolution. It is released and
+ * its profile is deleted as soon as the {@link ITargetResolutionListener} returns and no
+ * {@link ResolvedTarget} retains it any more, so only the targets in use are kept in memory.
+ * <p>
+ * With {@link ExportOptions#isResolveOnce()} every target with slicer mode IU locations only
+ * gets resolved once for all platforms and the IUs of the single configurations are derived
+ * using the platform filters of the IUs. Targets with planner mode IU locations are still
+ * resolved per configuration.
+ * <p>
+ * With {@link ExportOptions#isTargetGraph()} the targets consisting of slicer mode IU locations
+ * only are split into (location, unit, platform) nodes, see {@link TargetGraph}. Nodes shared by
+ * several targets are resolved only once.
+ */
+@SuppressWarnings("restriction")
+public class TargetResolver {
+	private static final long POLL_INTERVAL = 100;
+	private static final long TERMINATION_TIMEOUT = 60;
+
+	private final List<ITargetHandle> targetHandles;
+	private final List<ExportConfiguration> configurations;
+	private final ExportOptions options;
+	private boolean collectUnits;
+	private ResolutionCache cache;
+	private ResolutionCache journal;
+	private ExportMetrics metrics = new ExportMetrics();
+
+	private static final Pattern INCLUDE_ALL_PLATFORMS = Pattern.compile("includeAllPlatforms=\"[^\"]*\""); //$NON-NLS-1$
+
+	/**
+	 * A target definition to resolve and the configurations served by the resolution.
+	 */
+	private static class Combination implements ResolvedTarget.Owner {
+		final String name;
+		final List<ExportConfiguration> configurations;
+		final boolean allPlatforms;
+		final byte[] content;
+		/**
+		 * Key of the node in the {@link TargetGraph}, <code>null</code> - complete target
+		 */
+		final String nodeKey;
+		private ITargetDefinition targetDefinition;
+		/**
+		 * The resolution holds a reference until the listener returned
+		 */
+		private int references = 1;
+
+		Combination(String name, List<ExportConfiguration> configurations, boolean allPlatforms, byte[] content, String nodeKey) {
+			this.name = name;
+			this.configurations = configurations;
+			this.allPlatforms = allPlatforms;
+			this.content = content;
+			this.nodeKey = nodeKey;
+		}
+
+		/**
+		 * @return copy of the target, created on the first call
+		 */
+		synchronized ITargetDefinition getTargetDefinition() throws CoreException {
+			if (targetDefinition == null) {
+				ITargetPlatformService service = getTargetPlatformService();
+				if (allPlatforms) {
+					targetDefinition = createAllPlatformsTarget(service, name, content);
+				} else {
+					// A new (local) target has its own handle and so its own p2 profile
+					targetDefinition = createTarget(service, name, content);
+					ExportConfiguration configuration = configurations.get(0);
+					targetDefinition.setArch(configuration.getArch());
+					targetDefinition.setWS(configuration.getWs());
+					targetDefinition.setOS(configuration.getOs());
+				}
+			}
+			return targetDefinition;
+		}
+
+		@Override
+		public synchronized void retain() {
+			references++;
+		}
+
+		/**
+		 * Deletes the profile of the target and releases it with the last reference
+		 */
+		@Override
+		public synchronized void release() {
+			if (--references == 0 && targetDefinition != null) {
+				P2TargetUtils.deleteProfile(targetDefinition.getHandle());
+				targetDefinition = null;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + configurations;
+		}
+	}
+
+	/**
+	 * Progress monitor of a worker thread. Workers can't report to the (not thread safe)
+	 * {@link SubMonitor} of the caller, they only observe the cancellation.
+	 */
+	private static class WorkerMonitor extends NullProgressMonitor {
+		private final AtomicBoolean canceled;
+
+		WorkerMonitor(AtomicBoolean canceled) {
+			this.canceled = canceled;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return canceled.get() || super.isCanceled();
+		}
+	}
+
+	public TargetResolver(List<ITargetHandle> targetHandles, List<ExportConfiguration> configurations, ExportOptions options) {
+		this.targetHandles = targetHandles;
+		this.configurations = configurations;
+		this.options = options;
+	}
+
+	/**
+	 * @param collectUnits <code>true</code> - query the resolved IUs and the repositories of
+	 *            every combination, see {@link ResolvedTarget#getInstallableUnits()}
+	 */
+	public void setCollectUnits(boolean collectUnits) {
+		this.collectUnits = collectUnits;
+	}
+
+	/**
+	 * @param cache cache of the collected IUs, <code>null</code> - don't cache
+	 */
+	public void setCache(ResolutionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @param journal resolutions of the export, that are kept until it's finished, see
+	 *            {@link MirrorJournal}. <code>null</code> - no journal
+	 */
+	public void setJournal(ResolutionCache journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * @param metrics collects the timings and the counters of the resolution
+	 */
+	public void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private List<ResolutionCache> getCaches() {
+		List<ResolutionCache> caches = new ArrayList<>();
+		if (journal != null) {
+			caches.add(journal);
+		}
+		if (cache != null) {
+			caches.add(cache);
+		}
+		return caches;
+	}
+
+	/**
+	 * Resolves all combinations and calls the listener for each of them.
+	 *
+	 * @param monitor progress monitor. Must not be accessed concurrently during the call.
+	 * @param listener gets called from the worker threads, never after the return
+	 */
+	public void resolve(IProgressMonitor monitor, final ITargetResolutionListener listener) throws CoreException, InterruptedException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 1 + 2 * targetHandles.size() * configurations.size());
+		subMonitor.subTask("Loading target definitions");
+		TargetGraph graph = new TargetGraph();
+		List<Combination> combinations = createCombinations(graph);
+		subMonitor.worked(1);
+		int work = 0;
+		for (Combination combination : combinations) {
+			work += 2 * combination.configurations.size();
+		}
+		subMonitor.setWorkRemaining(work);
+
+		final AtomicBoolean canceled = new AtomicBoolean();
+		int threads = Math.min(options.getResolveThreads(), Math.max(1, combinations.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("Target resolver")); //$NON-NLS-1$
+		try {
+			CompletionService<Combination> completionService = new ExecutorCompletionService<>(executor);
+			for (final Combination combination : combinations) {
+				final ITargetResolutionListener combinationListener = combination.nodeKey != null ? createNodeListener(graph, combination.nodeKey, listener) : listener;
+				completionService.submit(new Callable<Combination>() {
+					@Override
+					public Combination call() throws Exception {
+						resolve(combination, new WorkerMonitor(canceled), combinationListener);
+						return combination;
+					}
+				});
+			}
+
+			int done = 0;
+			while (done < combinations.size()) {
+				if (subMonitor.isCanceled()) {
+					throw new InterruptedException();
+				}
+				Future<Combination> future = completionService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if (future == null) {
+					continue;
+				}
+				Combination combination = getResult(future);
+				done++;
+				subMonitor.subTask("Resolved " + done + " of " + combinations.size() + ": " + combination);
+				subMonitor.worked(2 * combination.configurations.size());
+			}
+		} finally {
+			canceled.set(true);
+			executor.shutdownNow();
+			awaitTermination(executor);
+		}
+	}
+
+	/**
+	 * Waits for the canceled workers, so no listener gets called after the return. The workers
+	 * release their targets and delete their profiles themselves.
+	 */
+	private static void awaitTermination(ExecutorService executor) {
+		try {
+			if (!executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+				Activator.log(new IllegalStateException("Target resolver workers didn't terminate within " + TERMINATION_TIMEOUT + " seconds"));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Only the serialized targets are kept, the loaded target definitions are released right
+	 * away.
+	 */
+	private List<Combination> createCombinations(TargetGraph graph) throws CoreException {
+		ITargetPlatformService service = getTargetPlatformService();
+		List<Combination> combinations = new ArrayList<>();
+		Set<String> nodeKeys = new HashSet<>();
+		for (ITargetHandle handle : targetHandles) {
+			ITargetDefinition source = handle.getTargetDefinition();
+			String name = source.getName() != null ? source.getName() : handle.toString();
+			boolean allPlatforms = collectUnits && options.isResolveOnce() && isSlicerOnly(source);
+			if (collectUnits && options.isTargetGraph() && addNodes(service, name, source, allPlatforms, graph, combinations, nodeKeys)) {
+				continue;
+			}
+			byte[] content = toXML(name, source);
+			if (allPlatforms) {
+				combinations.add(new Combination(name, configurations, true, content, null));
+				continue;
+			}
+			for (ExportConfiguration configuration : configurations) {
+				combinations.add(new Combination(name, Collections.singletonList(configuration), false, content, null));
+			}
+		}
+		return combinations;
+	}
+
+	/**
+	 * @return <code>false</code> - the target has planner mode IU locations, the planner result
+	 *         depends on the platform, so it must be resolved per configuration
+	 */
+	private static boolean isSlicerOnly(ITargetDefinition source) {
+		ITargetLocation[] targetLocations = source.getTargetLocations();
+		if (targetLocations != null) {
+			for (ITargetLocation targetLocation : targetLocations) {
+				if (targetLocation instanceof IUBundleContainer && ((IUBundleContainer) targetLocation).getIncludeAllRequired()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Splits the target into nodes with a single unit and adds the nodes not added by the
+	 * previous targets. The slicer result of a target is the union of the slicer results of its
+	 * units, the planner resolves all units of a target together though. So only targets with
+	 * slicer mode IU locations can be split. Like PDE, every node is resolved against the
+	 * repositories of all IU locations of the target, so nodes are only shared by targets with
+	 * the same repositories.
+	 *
+	 * @return <code>false</code> - the target can't be split
+	 */
+	private boolean addNodes(ITargetPlatformService service, String name, ITargetDefinition source, boolean allPlatforms, TargetGraph graph, List<Combination> combinations, Set<String> nodeKeys) throws CoreException {
+		ITargetLocation[] targetLocations = source.getTargetLocations();
+		if (targetLocations == null || targetLocations.length == 0) {
+			return false;
+		}
+		for (ITargetLocation targetLocation : targetLocations) {
+			if (!(targetLocation instanceof IUBundleContainer)) {
+				return false;
+			}
+			IUBundleContainer container = (IUBundleContainer) targetLocation;
+			// Without repositories the location depends on the known repositories
+			if (container.getRepositories() == null || container.getIds().length == 0 || container.getIncludeAllRequired()) {
+				return false;
+			}
+		}
+
+		Set<URI> targetRepositories = new TreeSet<>(getRepositories(source));
+		URI[] repositories = targetRepositories.toArray(new URI[targetRepositories.size()]);
+		Set<String> targetNodeKeys = new LinkedHashSet<>();
+		for (ITargetLocation targetLocation : targetLocations) {
+			IUBundleContainer container = (IUBundleContainer) targetLocation;
+			int flags = getFlags(container);
+			String[] ids = container.getIds();
+			String[] versions = container.getVersions();
+			for (int i = 0; i < ids.length; i++) {
+				String nodeKey = flags + "|" + targetRepositories + "|" + ids[i] + '/' + versions[i]; //$NON-NLS-1$ //$NON-NLS-2$
+				targetNodeKeys.add(nodeKey);
+				if (!nodeKeys.add(nodeKey)) {
+					continue;
+				}
+				ITargetDefinition node = service.newTarget();
+				node.setTargetLocations(new ITargetLocation[] { service.newIULocation(new String[] { ids[i] }, new String[] { versions[i] }, repositories, flags) });
+				String nodeName = ids[i] + ' ' + versions[i];
+				byte[] content = toXML(nodeName, node);
+				if (allPlatforms) {
+					combinations.add(new Combination(nodeName, configurations, true, content, nodeKey));
+					continue;
+				}
+				for (ExportConfiguration configuration : configurations) {
+					combinations.add(new Combination(nodeName, Collections.singletonList(configuration), false, content, nodeKey));
+				}
+			}
+		}
+		for (ExportConfiguration configuration : configurations) {
+			graph.addTarget(name, configuration, targetNodeKeys);
+		}
+		return true;
+	}
+
+	private static int getFlags(IUBundleContainer container) {
+		int flags = 0;
+		if (container.getIncludeAllRequired()) {
+			flags |= IUBundleContainer.INCLUDE_REQUIRED;
+		}
+		if (container.getIncludeAllEnvironments()) {
+			flags |= IUBundleContainer.INCLUDE_ALL_ENVIRONMENTS;
+		}
+		if (container.getIncludeSource()) {
+			flags |= IUBundleContainer.INCLUDE_SOURCE;
+		}
+		if (container.getIncludeConfigurePhase()) {
+			flags |= IUBundleContainer.INCLUDE_CONFIGURE_PHASE;
+		}
+		return flags;
+	}
+
+	/**
+	 * @return listener merging the IUs of a node into the targets of the graph. Passes the
+	 *         completed targets to the listener.
+	 */
+	private static ITargetResolutionListener createNodeListener(final TargetGraph graph, final String nodeKey, final ITargetResolutionListener listener) {
+		return new ITargetResolutionListener() {
+			@Override
+			public void targetResolved(ResolvedTarget node, IProgressMonitor monitor) throws CoreException, InterruptedException {
+				for (ResolvedTarget target : graph.nodeResolved(nodeKey, node)) {
+					listener.targetResolved(target, monitor);
+				}
+			}
+		};
+	}
+
+	private static ITargetDefinition createTarget(ITargetPlatformService service, String name, byte[] content) throws CoreException {
+		try {
+			ITargetDefinition targetDefinition = service.newTarget();
+			TargetDefinitionPersistenceHelper.initFromXML(targetDefinition, new ByteArrayInputStream(content));
+			return targetDefinition;
+		} catch (CoreException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Error copying target '" + name + "': " + e, e));
+		}
+	}
+
+	/**
+	 * Copies the target definition switching all IU locations to include all platforms. Only
+	 * used for targets with slicer mode IU locations, see {@link #isSlicerOnly(ITargetDefinition)}.
+	 */
+	private static ITargetDefinition createAllPlatformsTarget(ITargetPlatformService service, String name, byte[] content) throws CoreException {
+		try {
+			String xml = new String(content, "UTF-8"); //$NON-NLS-1$
+			xml = INCLUDE_ALL_PLATFORMS.matcher(xml).replaceAll("includeAllPlatforms=\"true\""); //$NON-NLS-1$
+
+			ITargetDefinition targetDefinition = service.newTarget();
+			TargetDefinitionPersistenceHelper.initFromXML(targetDefinition, new ByteArrayInputStream(xml.getBytes("UTF-8"))); //$NON-NLS-1$
+			return targetDefinition;
+		} catch (CoreException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Error preparing target '" + name + "' for all platforms: " + e, e));
+		}
+	}
+
+	private static byte[] toXML(String name, ITargetDefinition targetDefinition) throws CoreException {
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			TargetDefinitionPersistenceHelper.persistXML(targetDefinition, output);
+			return output.toByteArray();
+		} catch (CoreException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Error reading target '" + name + "': " + e, e));
+		}
+	}
+
+	/**
+	 * @return IUs without platform filter or with a platform filter matching the configuration
+	 */
+	static Set<IInstallableUnit> filterUnits(Set<IInstallableUnit> units, ExportConfiguration configuration) {
+		Map<String, String> environment = new HashMap<>();
+		environment.put("osgi.os", configuration.getOs()); //$NON-NLS-1$
+		environment.put("osgi.ws", configuration.getWs()); //$NON-NLS-1$
+		environment.put("osgi.arch", configuration.getArch()); //$NON-NLS-1$
+		IInstallableUnit context = InstallableUnit.contextIU(environment);
+
+		Set<IInstallableUnit> result = new HashSet<>();
+		for (IInstallableUnit unit : units) {
+			IMatchExpression<IInstallableUnit> filter = unit.getFilter();
+			if (filter == null || filter.isMatch(context)) {
+				result.add(unit);
+			}
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resolve(Combination combination, IProgressMonitor monitor, ITargetResolutionListener listener) throws CoreException, InterruptedException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 3 + combination.configurations.size());
+		try {
+			ITargetDefinition targetDefinition = combination.getTargetDefinition();
+			String[] cacheKeys = null;
+			List<ResolutionCache> caches = getCaches();
+			if (collectUnits && !caches.isEmpty()) {
+				cacheKeys = computeCacheKeys(combination, caches.get(0), subMonitor.newChild(1));
+				if (resolveFromCache(combination, caches, cacheKeys, listener, subMonitor.newChild(1))) {
+					metrics.increment(ExportMetrics.COUNTER_RESOLUTION_CACHE_HITS, combination.configurations.size());
+					return;
+				}
+			}
+			subMonitor.setWorkRemaining(2 + combination.configurations.size());
+
+			// Resolve the target
+			long begin = metrics.begin();
+			targetDefinition.resolve(subMonitor.newChild(1));
+			metrics.end(ExportMetrics.PHASE_RESOLVE, begin);
+			metrics.increment(ExportMetrics.COUNTER_RESOLUTIONS, 1);
+
+			//TODO Check targetDefinition.getStatus()
+			if (monitor.isCanceled()) {
+				throw new InterruptedException();
+			}
+			Set<IInstallableUnit> units = null;
+			Set<URI> repositories = null;
+			if (collectUnits) {
+				begin = metrics.begin();
+				IQueryResult<?> iUs = P2TargetUtils.getIUs(targetDefinition, subMonitor.newChild(1));
+				metrics.end(ExportMetrics.PHASE_IU_QUERY, begin);
+				units = (Set<IInstallableUnit>) iUs.toSet();
+				repositories = getRepositories(targetDefinition);
+			}
+			subMonitor.setWorkRemaining(combination.configurations.size());
+			for (int i = 0; i < combination.configurations.size(); i++) {
+				ExportConfiguration configuration = combination.configurations.get(i);
+				ResolvedTarget target = new ResolvedTarget(combination.name, configuration, targetDefinition);
+				target.setOwner(combination);
+				if (collectUnits) {
+					target.setInstallableUnits(combination.allPlatforms ? filterUnits(units, configuration) : units);
+					target.setRepositories(repositories);
+					if (cacheKeys != null && cacheKeys[i] != null) {
+						for (ResolutionCache resolutionCache : caches) {
+							resolutionCache.put(cacheKeys[i], target.getInstallableUnits(), repositories);
+						}
+					}
+				}
+				listener.targetResolved(target, subMonitor.newChild(1));
+			}
+		} finally {
+			combination.release();
+		}
+	}
+
+	private String[] computeCacheKeys(Combination combination, ResolutionCache cache, IProgressMonitor monitor) throws CoreException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, combination.configurations.size());
+		Set<URI> repositories = getRepositories(combination.getTargetDefinition());
+		String mode = combination.allPlatforms ? "allPlatforms" : "default"; //$NON-NLS-1$ //$NON-NLS-2$
+		String[] cacheKeys = new String[combination.configurations.size()];
+		for (int i = 0; i < cacheKeys.length; i++) {
+			cacheKeys[i] = cache.computeKey(combination.content, mode, combination.configurations.get(i), repositories, subMonitor.newChild(1));
+		}
+		return cacheKeys;
+	}
+
+	/**
+	 * @param caches caches in the lookup order. The cache keys don't depend on the cache.
+	 * @return <code>true</code> - all configurations of the combination were cached and passed to the listener
+	 */
+	private boolean resolveFromCache(Combination combination, List<ResolutionCache> caches, String[] cacheKeys, ITargetResolutionListener listener, IProgressMonitor monitor) throws CoreException, InterruptedException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 2 * cacheKeys.length);
+		List<ResolvedTarget> targets = new ArrayList<>();
+		for (int i = 0; i < cacheKeys.length; i++) {
+			ResolutionCache.Entry entry = null;
+			SubMonitor cacheMonitor = subMonitor.newChild(1).setWorkRemaining(caches.size());
+			for (int j = 0; j < caches.size() && entry == null && cacheKeys[i] != null; j++) {
+				entry = caches.get(j).get(cacheKeys[i], cacheMonitor.newChild(1));
+			}
+			if (entry == null) {
+				return false;
+			}
+			ResolvedTarget target = new ResolvedTarget(combination.name, combination.configurations.get(i), null);
+			target.setInstallableUnits(entry.getInstallableUnits());
+			target.setRepositories(entry.getRepositories());
+			targets.add(target);
+		}
+		for (ResolvedTarget target : targets) {
+			listener.targetResolved(target, subMonitor.newChild(1));
+		}
+		return true;
+	}
+
+	static Set<URI> getRepositories(ITargetDefinition targetDefinition) {
+		Set<URI> repositories = new HashSet<>();
+		ITargetLocation[] targetLocations = targetDefinition.getTargetLocations();
+		if (targetLocations != null) {
+			for (ITargetLocation targetLocation : targetLocations) {
+				if (targetLocation instanceof IUBundleContainer) {
+					for (URI uri : ((IUBundleContainer) targetLocation).getRepositories()) {
+						repositories.add(uri);
+					}
+				}
+			}
+		}
+		return repositories;
+	}
+
+	private static <T> T getResult(Future<T> future) throws CoreException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			}
+			if (cause instanceof InterruptedException || cause instanceof OperationCanceledException) {
+				throw new InterruptedException();
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	static ITargetPlatformService getTargetPlatformService() {
+		return (ITargetPlatformService) PDECore.getDefault().acquireService(ITargetPlatformService.class);
+	}
+}
@@ -0,0 +1,80 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transfer rate and remaining time of the artifact mirroring. The workers only update atomic
+ * counters, the messages are built by the polling thread and throttled to
+ * {@link #REPORT_INTERVAL}. The clock starts with the first submitted work unit, not with the
+ * resolution of the targets preceding it.
+ */
+class TransferProgress {
+	private static final long REPORT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+	private static final String[] UNITS = { "B", "KB", "MB", "GB" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	private final AtomicLong start = new AtomicLong();
+	private final AtomicInteger completedArtifacts = new AtomicInteger();
+	private final AtomicLong transferredBytes = new AtomicLong();
+	private long lastReport;
+
+	/**
+	 * Starts the clock, if not started yet. Called for every submitted work unit.
+	 */
+	void start() {
+		start.compareAndSet(0, System.nanoTime());
+	}
+
+	/**
+	 * Called by the workers
+	 */
+	void artifactsCompleted(int artifacts, long bytes) {
+		completedArtifacts.addAndGet(artifacts);
+		transferredBytes.addAndGet(bytes);
+	}
+
+	int getCompletedArtifacts() {
+		return completedArtifacts.get();
+	}
+
+	/**
+	 * @return progress message or <code>null</code>, if the last message is recent enough
+	 */
+	String getMessage(int totalArtifacts) {
+		long now = System.nanoTime();
+		if (now - lastReport < REPORT_INTERVAL) {
+			return null;
+		}
+		lastReport = now;
+
+		int completed = completedArtifacts.get();
+		long started = start.get();
+		long elapsed = started == 0 ? 1 : Math.max(1, now - started);
+		StringBuilder message = new StringBuilder();
+		message.append("Mirrored ").append(completed).append(" of ").append(totalArtifacts).append(" artifacts, ");
+		message.append(formatBytes(transferredBytes.get() * TimeUnit.SECONDS.toNanos(1) / elapsed)).append("/s"); //$NON-NLS-1$
+		if (completed > 0 && completed < totalArtifacts) {
+			long remaining = elapsed / completed * (totalArtifacts - completed);
+			message.append(", about ").append(formatTime(TimeUnit.NANOSECONDS.toSeconds(remaining))).append(" remaining");
+		}
+		return message.toString();
+	}
+
+	private static String formatBytes(long bytes) {
+		double value = bytes;
+		int unit = 0;
+		while (value >= 1024 && unit < UNITS.length - 1) {
+			value /= 1024;
+			unit++;
+		}
+		return String.format(unit == 0 ? "%.0f %s" : "%.1f %s", Double.valueOf(value), UNITS[unit]); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static String formatTime(long seconds) {
+		if (seconds >= 3600) {
+			return String.format("%d:%02d:%02d", Long.valueOf(seconds / 3600), Long.valueOf(seconds / 60 % 60), Long.valueOf(seconds % 60)); //$NON-NLS-1$
+		}
+		return String.format("%d:%02d", Long.valueOf(seconds / 60), Long.valueOf(seconds % 60)); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,243 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.MultiStatus;
+
+/**
+ * Runs the artifact transfers of the mirror tool on {@link ExportOptions#getMirrorThreads()}
+ * threads with a concurrency limit and an optional bandwidth cap per source host.
+ * <p>
+ * The queued transfers are started largest first, so the large artifacts don't end up in the
+ * long tail of the mirroring. A transfer of a host at its limit waits in the queue, while the
+ * transfers of the other hosts go ahead. The bytes reported by {@link #transferred(String, long)}
+ * delay the next transfer of a capped host, no worker thread is blocked by the cap.
+ * <p>
+ * The limits are configured with {@link ExportOptions#getHosts()}, a comma separated list of
+ * <code>host=connections[:kilobytes per second]</code>, e.g.
+ * <code>download.eclipse.org=2:2048,nexus.example.com=16</code>. Hosts not listed get
+ * {@link ExportOptions#getHostConnections()} connections without a bandwidth cap. Local file
+ * repositories are only bounded by the number of threads.
+ */
+class TransferScheduler {
+	private static final String LOCAL_HOST = ""; //$NON-NLS-1$
+
+	private final ExecutorService executor;
+	private final ScheduledExecutorService timer;
+	private final int threads;
+	private final int defaultConnections;
+	private final Map<String, Host> hosts = new HashMap<>();
+	private final Map<String, int[]> limits = new HashMap<>();
+	private final BlockingQueue<Future<MultiStatus>> completed = new LinkedBlockingQueue<>();
+	private int running;
+	private long sequence;
+	private boolean wakeUpScheduled;
+	private long wakeUpAt;
+
+	/**
+	 * Queued transfers and limits of a source host
+	 */
+	private static class Host {
+		final int connections;
+		final long bytesPerSecond;
+		final PriorityQueue<Transfer> queue = new PriorityQueue<>();
+		int active;
+		long availableAt = System.nanoTime();
+
+		Host(int connections, long bytesPerSecond) {
+			this.connections = connections;
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		boolean isAvailable(long now) {
+			return active < connections && now - availableAt >= 0;
+		}
+	}
+
+	private class Transfer extends FutureTask<MultiStatus> implements Comparable<Transfer> {
+		final Host host;
+		final long size;
+		final long order = sequence++;
+
+		Transfer(Host host, long size, Callable<MultiStatus> task) {
+			super(task);
+			this.host = host;
+			this.size = size;
+		}
+
+		@Override
+		protected void done() {
+			finished(this);
+		}
+
+		@Override
+		public int compareTo(Transfer other) {
+			if (size != other.size) {
+				return size > other.size ? -1 : 1;
+			}
+			return Long.compare(order, other.order);
+		}
+	}
+
+	TransferScheduler(ExportOptions options) {
+		this.threads = options.getMirrorThreads();
+		this.defaultConnections = options.getHostConnections();
+		parseLimits(options.getHosts());
+		this.executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("Artifact mirror")); //$NON-NLS-1$
+		this.timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Artifact mirror throttle")); //$NON-NLS-1$
+	}
+
+	/**
+	 * @param host source host, <code>null</code> - local repository
+	 * @param size estimated size of the transfer in bytes, larger transfers are started first
+	 */
+	synchronized void submit(String host, long size, Callable<MultiStatus> task) {
+		Host queue = getHost(host);
+		queue.queue.add(new Transfer(queue, size, task));
+		dispatch();
+	}
+
+	/**
+	 * @return next finished transfer or <code>null</code>, if none finished within the timeout
+	 */
+	Future<MultiStatus> poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return completed.poll(timeout, unit);
+	}
+
+	/**
+	 * Accounts the bytes of a transfer to the bandwidth cap of the host. The next transfer of the
+	 * host is started as soon as the bytes would have been transferred at the capped rate.
+	 */
+	synchronized void transferred(String host, long bytes) {
+		Host queue = getHost(host);
+		if (queue.bytesPerSecond <= 0 || bytes <= 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		long start = now - queue.availableAt > 0 ? now : queue.availableAt;
+		queue.availableAt = start + bytes * TimeUnit.SECONDS.toNanos(1) / queue.bytesPerSecond;
+	}
+
+	void shutdownNow() {
+		executor.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	private synchronized void finished(Transfer transfer) {
+		transfer.host.active--;
+		running--;
+		completed.add(transfer);
+		dispatch();
+	}
+
+	/**
+	 * Starts the largest queued transfers of the hosts below their limits. Schedules the next
+	 * dispatch, if hosts with queued transfers wait for their bandwidth cap.
+	 */
+	private void dispatch() {
+		while (running < threads && !executor.isShutdown()) {
+			long now = System.nanoTime();
+			Transfer next = null;
+			Host throttled = null;
+			for (Host host : hosts.values()) {
+				Transfer head = host.queue.peek();
+				if (head == null) {
+					continue;
+				}
+				if (host.isAvailable(now)) {
+					if (next == null || head.compareTo(next) < 0) {
+						next = head;
+					}
+				} else if (host.active < host.connections && (throttled == null || host.availableAt - throttled.availableAt < 0)) {
+					throttled = host;
+				}
+			}
+			if (next == null) {
+				if (throttled != null) {
+					scheduleDispatch(throttled.availableAt, now);
+				}
+				return;
+			}
+			next.host.queue.poll();
+			next.host.active++;
+			running++;
+			try {
+				executor.execute(next);
+			} catch (RejectedExecutionException e) {
+				// Shut down concurrently
+				return;
+			}
+		}
+	}
+
+	private void scheduleDispatch(long at, long now) {
+		if (wakeUpScheduled && wakeUpAt - at <= 0) {
+			return;
+		}
+		try {
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (TransferScheduler.this) {
+						wakeUpScheduled = false;
+						dispatch();
+					}
+				}
+			}, at - now, TimeUnit.NANOSECONDS);
+			wakeUpScheduled = true;
+			wakeUpAt = at;
+		} catch (RejectedExecutionException e) {
+			// Shut down concurrently
+		}
+	}
+
+	private Host getHost(String name) {
+		String key = name != null ? name.toLowerCase() : LOCAL_HOST;
+		Host host = hosts.get(key);
+		if (host == null) {
+			int[] limit = limits.get(key);
+			if (key.equals(LOCAL_HOST)) {
+				host = new Host(threads, 0);
+			} else if (limit != null) {
+				host = new Host(limit[0], limit[1] * 1024L);
+			} else {
+				host = new Host(defaultConnections, 0);
+			}
+			hosts.put(key, host);
+		}
+		return host;
+	}
+
+	private void parseLimits(String configuration) {
+		if (configuration == null) {
+			return;
+		}
+		for (String entry : configuration.split(",")) { //$NON-NLS-1$
+			int separator = entry.indexOf('=');
+			if (separator <= 0) {
+				continue;
+			}
+			String host = entry.substring(0, separator).trim().toLowerCase();
+			String[] values = entry.substring(separator + 1).trim().split(":"); //$NON-NLS-1$
+			try {
+				int connections = Math.max(1, Integer.parseInt(values[0].trim()));
+				int kilobytesPerSecond = values.length > 1 ? Math.max(0, Integer.parseInt(values[1].trim())) : 0;
+				limits.put(host, new int[] { connections, kilobytesPerSecond });
+			} catch (NumberFormatException e) {
+				Activator.log(new IllegalArgumentException("Invalid host limit '" + entry + "'", e));
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.eclipse.pde.targetplatformexporter;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IVersionedId;
+import org.eclipse.equinox.p2.metadata.VersionedId;
+
+/**
+ * Compact references (id and version) of the IUs to mirror, grouped by their source
+ * repositories.
+ * <p>
+ * The full IUs are not retained, they are loaded again from the source repositories when the
+ * metadata gets written. The ids and the versions are interned with an {@link Interner}.
+ */
+class UnitReferenceIndex {
+	private final Set<IVersionedId> references = new HashSet<>();
+	private final Interner interner = new Interner();
+	private Map<Set<URI>, List<IVersionedId>> pending = new LinkedHashMap<>();
+	private int pendingCount;
+
+	/**
+	 * @return <code>true</code> - the IU is new
+	 */
+	boolean add(IInstallableUnit unit, Set<URI> repositories) {
+		IVersionedId reference = new VersionedId(interner.intern(unit.getId()), interner.intern(unit.getVersion()));
+		if (!references.add(reference)) {
+			return false;
+		}
+		List<IVersionedId> units = pending.get(repositories);
+		if (units == null) {
+			units = new ArrayList<>();
+			pending.put(repositories, units);
+		}
+		units.add(reference);
+		pendingCount++;
+		return true;
+	}
+
+	/**
+	 * @return number of the references added since the last {@link #drain()}
+	 */
+	int getPendingCount() {
+		return pendingCount;
+	}
+
+	/**
+	 * @return references added since the last call, by their source repositories
+	 */
+	Map<Set<URI>, List<IVersionedId>> drain() {
+		Map<Set<URI>, List<IVersionedId>> result = pending;
+		pending = new LinkedHashMap<>();
+		pendingCount = 0;
+		return result;
+	}
+}
@@ -37,6 +37,8 @@ import org.eclipse.pde.internal.ui.editor.site.PortabilitySection;
 import org.eclipse.pde.internal.ui.util.FileExtensionFilter;
 import org.eclipse.pde.internal.ui.util.FileValidator;
 import org.eclipse.pde.internal.ui.util.SWTUtil;
+import org.eclipse.pde.targetplatformexporter.ExportOptions;
+import org.eclipse.pde.targetplatformexporter.ResolutionCache;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.CCombo;
 import org.eclipse.swt.events.ModifyEvent;
@@ -50,6 +52,7 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IWorkbenchWindow;
@@ -124,6 +127,11 @@ public class TargetDefinitionFileSelectionWizardPage extends WizardPage {
 	private static final String SETTINGS_P2_MIRROR = "p2.mirror";
 	private static final String SETTINGS_REPO_LOCATION = "repo.location";
 	private static final String SETTINGS_CONFIG_TABLE = "config.table";
+	private static final String SETTINGS_RESOLVE_THREADS = "resolve.threads";
+	private static final String SETTINGS_RESOLVE_ONCE = "resolve.once";
+	private static final String SETTINGS_MIRROR_THREADS = "mirror.threads";
+	private static final String SETTINGS_INCREMENTAL = "incremental";
+	private static final String SETTINGS_RESOLUTION_CACHE = "resolution.cache";
 
 	private Text targetDefinitionsText;
 	private Object[] targetSelection;
@@ -131,6 +139,11 @@ public class TargetDefinitionFileSelectionWizardPage extends WizardPage {
 	private ArrayList<ExportConfiguration> input;
 	private Text repositoryLocationText;
 	private Button p2MirrorCheckbox;
+	private Spinner resolveThreadsSpinner;
+	private Button resolveOnceCheckbox;
+	private Spinner mirrorThreadsSpinner;
+	private Button incrementalCheckbox;
+	private Button resolutionCacheCheckbox;
 
 	protected TargetDefinitionFileSelectionWizardPage() {
 		super("Select targets");
@@ -241,6 +254,45 @@ public class TargetDefinitionFileSelectionWizardPage extends WizardPage {
 		p2MirrorCheckbox.setText("Create p2 mirror repository instead of exporting plugins");
 		p2MirrorCheckbox.setSelection(true);
 
+		label = new Label(composite, SWT.NONE);
+		label.setText("Parallel resolution jobs:");
+
+		resolveThreadsSpinner = new Spinner(composite, SWT.BORDER);
+		resolveThreadsSpinner.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false, 2, 1));
+		resolveThreadsSpinner.setValues(new ExportOptions().getResolveThreads(), 1, 64, 0, 1, 4);
+
+		resolveOnceCheckbox = new Button(composite, SWT.CHECK);
+		resolveOnceCheckbox.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, true, false, 3, 0));
+		resolveOnceCheckbox.setText("Resolve each slicer mode target only once for all platforms (p2 mirror only)");
+		resolveOnceCheckbox.setSelection(new ExportOptions().isResolveOnce());
+
+		label = new Label(composite, SWT.NONE);
+		label.setText("Parallel downloads:");
+
+		mirrorThreadsSpinner = new Spinner(composite, SWT.BORDER);
+		mirrorThreadsSpinner.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false, 2, 1));
+		mirrorThreadsSpinner.setValues(new ExportOptions().getMirrorThreads(), 1, 64, 0, 1, 4);
+
+		incrementalCheckbox = new Button(composite, SWT.CHECK);
+		incrementalCheckbox.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, true, false, 3, 0));
+		incrementalCheckbox.setText("Mirror only artifacts missing in the p2 repository");
+		incrementalCheckbox.setSelection(new ExportOptions().isIncremental());
+
+		resolutionCacheCheckbox = new Button(composite, SWT.CHECK);
+		resolutionCacheCheckbox.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, true, false, 2, 0));
+		resolutionCacheCheckbox.setText("Reuse resolutions of unchanged targets (p2 mirror only)");
+		resolutionCacheCheckbox.setSelection(new ExportOptions().isResolutionCache());
+
+		Button clearCacheButton = new Button(composite, SWT.PUSH);
+		clearCacheButton.setText("Clear cache");
+		clearCacheButton.setLayoutData(new GridData());
+		clearCacheButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				ResolutionCache.getDefault(getExportOptions()).clear();
+			}
+		});
+		SWTUtil.setButtonDimensionHint(clearCacheButton);
+
 		setControl(composite);
 		
 		return composite;
@@ -252,6 +304,19 @@ public class TargetDefinitionFileSelectionWizardPage extends WizardPage {
 		if (section != null) {
 			p2MirrorCheckbox.setSelection(section.getBoolean(SETTINGS_P2_MIRROR));
 			repositoryLocationText.setText(section.get(SETTINGS_REPO_LOCATION));
+			if (section.get(SETTINGS_RESOLVE_THREADS) != null) {
+				resolveThreadsSpinner.setSelection(section.getInt(SETTINGS_RESOLVE_THREADS));
+			}
+			resolveOnceCheckbox.setSelection(section.getBoolean(SETTINGS_RESOLVE_ONCE));
+			if (section.get(SETTINGS_MIRROR_THREADS) != null) {
+				mirrorThreadsSpinner.setSelection(section.getInt(SETTINGS_MIRROR_THREADS));
+			}
+			if (section.get(SETTINGS_INCREMENTAL) != null) {
+				incrementalCheckbox.setSelection(section.getBoolean(SETTINGS_INCREMENTAL));
+			}
+			if (section.get(SETTINGS_RESOLUTION_CACHE) != null) {
+				resolutionCacheCheckbox.setSelection(section.getBoolean(SETTINGS_RESOLUTION_CACHE));
+			}
 			String[] parts = section.getArray(SETTINGS_CONFIG_TABLE);
 			input.clear();
 			for (String string : parts) {
@@ -274,6 +339,11 @@ public class TargetDefinitionFileSelectionWizardPage extends WizardPage {
 		
 		section.put(SETTINGS_REPO_LOCATION, repositoryLocationText.getText());
 		section.put(SETTINGS_P2_MIRROR, p2MirrorCheckbox.getSelection());
+		section.put(SETTINGS_RESOLVE_THREADS, resolveThreadsSpinner.getSelection());
+		section.put(SETTINGS_RESOLVE_ONCE, resolveOnceCheckbox.getSelection());
+		section.put(SETTINGS_MIRROR_THREADS, mirrorThreadsSpinner.getSelection());
+		section.put(SETTINGS_INCREMENTAL, incrementalCheckbox.getSelection());
+		section.put(SETTINGS_RESOLUTION_CACHE, resolutionCacheCheckbox.getSelection());
 		
 		String [] lines = new String[input.size()];
 		for (int i = 0; i < lines.length; i++) {
@@ -475,5 +545,15 @@ public class TargetDefinitionFileSelectionWizardPage extends WizardPage {
 		return p2MirrorCheckbox.getSelection();
 	}
 
+	public ExportOptions getExportOptions() {
+		ExportOptions options = new ExportOptions();
+		options.setResolveThreads(resolveThreadsSpinner.getSelection());
+		options.setResolveOnce(resolveOnceCheckbox.getSelection());
+		options.setMirrorThreads(mirrorThreadsSpinner.getSelection());
+		options.setIncremental(incrementalCheckbox.getSelection());
+		options.setResolutionCache(resolutionCacheCheckbox.getSelection());
+		return options;
+	}
+
 
 }
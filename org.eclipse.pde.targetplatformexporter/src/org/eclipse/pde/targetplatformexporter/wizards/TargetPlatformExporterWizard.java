@@ -10,11 +10,9 @@
  *******************************************************************************/
 package org.eclipse.pde.targetplatformexporter.wizards;
 
-import java.io.File;
 import java.lang.reflect.InvocationTargetException;
-import java.net.URI;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.core.resources.IFile;
@@ -22,28 +20,21 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
-import org.eclipse.core.runtime.SubMonitor;
-import org.eclipse.core.runtime.jobs.Job;
-import org.eclipse.equinox.p2.metadata.IInstallableUnit;
-import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.wizard.Wizard;
-import org.eclipse.pde.core.target.ITargetDefinition;
 import org.eclipse.pde.core.target.ITargetHandle;
-import org.eclipse.pde.core.target.ITargetLocation;
 import org.eclipse.pde.core.target.ITargetPlatformService;
 import org.eclipse.pde.internal.core.PDECore;
-import org.eclipse.pde.internal.core.target.ExportTargetJob;
-import org.eclipse.pde.internal.core.target.IUBundleContainer;
-import org.eclipse.pde.internal.core.target.P2TargetUtils;
 import org.eclipse.pde.internal.ui.PDEPlugin;
 import org.eclipse.pde.internal.ui.PDEPluginImages;
+import org.eclipse.pde.targetplatformexporter.Activator;
+import org.eclipse.pde.targetplatformexporter.ExportOptions;
 import org.eclipse.pde.targetplatformexporter.MirrorException;
-import org.eclipse.pde.targetplatformexporter.P2MirrorTool;
+import org.eclipse.pde.targetplatformexporter.TargetPlatformExporter;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IExportWizard;
 import org.eclipse.ui.IWorkbench;
@@ -89,11 +80,9 @@ public class TargetPlatformExporterWizard extends Wizard implements
 
 		final String repoPath = targetDefinitionFileSelectionWizardPage.getRepoPath();
 		final boolean p2Mirror= targetDefinitionFileSelectionWizardPage.getP2Mirror();
+		final ExportOptions options = targetDefinitionFileSelectionWizardPage.getExportOptions();
 		final AtomicReference<MultiStatus> multiStatusReference = new AtomicReference<>();
 
-		final Set<URI> repoURIs = new HashSet<>();
-		final Set<IInstallableUnit> installableUnitSet = new HashSet<>();
-
 		ProgressMonitorDialog dialog = new ProgressMonitorDialog(getShell()) {
 			protected void configureShell(Shell shell) {
 				super.configureShell(shell);
@@ -103,69 +92,25 @@ public class TargetPlatformExporterWizard extends Wizard implements
 
 		try {
 			dialog.run(true, true, new IRunnableWithProgress() {
-				@SuppressWarnings("unchecked")
 				public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-					int combinations = targetDefinitionFileSelectionWizardPage.getTargetFiles().size() * targetDefinitionFileSelectionWizardPage.getConfigurations().size();
-					SubMonitor subMonitor = SubMonitor.convert(monitor, 2 * combinations);
 					try {
-						subMonitor.setTaskName("Resolving and exporting target platform(s)");
-
 						ITargetPlatformService service = (ITargetPlatformService) PDECore.getDefault().acquireService(ITargetPlatformService.class);
+						List<ITargetHandle> targetHandles = new ArrayList<>();
 						for (IFile file : targetDefinitionFileSelectionWizardPage.getTargetFiles()) {
-							for (ExportConfiguration config : targetDefinitionFileSelectionWizardPage.getConfigurations()) {
-								try {
-									ITargetHandle fileHandle = service.getTarget(file);
-									ITargetDefinition targetDefinition;
-										targetDefinition = fileHandle.getTargetDefinition();
-									targetDefinition.setArch(config.getArch());
-									targetDefinition.setWS(config.getWs());
-									targetDefinition.setOS(config.getOs());
-
-									P2TargetUtils.deleteProfile(fileHandle);
-
-									// Resolve the target
-									targetDefinition.resolve(subMonitor.newChild(1));
-
-									//TODO Check targetDefinition.getStatus()
-									if (monitor.isCanceled()) {
-										throw new InterruptedException();
-									}
-									if (p2Mirror) {
-										IQueryResult<?> iUs = P2TargetUtils.getIUs(targetDefinition, subMonitor.newChild(1));
-										installableUnitSet.addAll((Set<IInstallableUnit>)iUs.toSet());
-										ITargetLocation[] targetLocations = targetDefinition.getTargetLocations();
-										for (ITargetLocation targetLocation : targetLocations) {
-											IUBundleContainer bundleContainer = (IUBundleContainer) targetLocation;
-											for (URI uri : bundleContainer.getRepositories()) {
-												repoURIs.add(uri);
-											}
-										}
-									} else {
-										subMonitor.subTask("Exporting target configuration");
-										Job job = new ExportTargetJob(targetDefinition, new File(repoPath).toURI(), false);
-										job.schedule();
-										job.join();
-										subMonitor.worked(1);
-									}
-								} catch (CoreException e) {
-									e.printStackTrace();
-									throw new InvocationTargetException(e, "Error exporting target platform(s): " + e);
-								}
-							}
+							targetHandles.add(service.getTarget(file));
 						}
 
+						TargetPlatformExporter exporter = new TargetPlatformExporter(targetHandles, targetDefinitionFileSelectionWizardPage.getConfigurations(), repoPath, options);
+						exporter.setP2Mirror(p2Mirror);
+						multiStatusReference.set(exporter.export(monitor));
+					} catch (CoreException e) {
+						e.printStackTrace();
+						throw new InvocationTargetException(e, "Error exporting target platform(s): " + e);
+					} catch (MirrorException e) {
+						throw new InvocationTargetException(e);
 					} finally {
 						monitor.done();
 					}
-					if (p2Mirror) {
-						P2MirrorTool p2MirrorTool = new P2MirrorTool(repoURIs, installableUnitSet, repoPath);
-						try {
-							MultiStatus status = p2MirrorTool.mirror(monitor);
-							multiStatusReference.set(status);
-						} catch (MirrorException e) {
-							throw new InvocationTargetException(e);
-						}
-					}
 				}
 			});
 
@@ -179,7 +124,11 @@ public class TargetPlatformExporterWizard extends Wizard implements
 				}
 
 			}
-			MessageDialog.openInformation(getShell(), "Mirror p2 repository", "Operation successful");
+			StringBuilder summary = new StringBuilder("Operation successful");
+			if (multiStatusReference.get() != null) {
+				getSummary(multiStatusReference.get(), summary);
+			}
+			MessageDialog.openInformation(getShell(), "Mirror p2 repository", summary.toString());
 			return true;
 		} catch (InvocationTargetException e) {
 			e.printStackTrace();
@@ -197,6 +146,15 @@ public class TargetPlatformExporterWizard extends Wizard implements
 		return false;
 	}
 
+	private void getSummary(IStatus multiStatus, StringBuilder builder) {
+		for (IStatus status : multiStatus.getChildren()) {
+			if (status.getSeverity() == IStatus.INFO && Activator.PLUGIN_ID.equals(status.getPlugin())) {
+				builder.append(System.getProperty("line.separator"));
+				builder.append(status.getMessage());
+			}
+		}
+	}
+
 	private void getMessage(IStatus multiStatus, StringBuilder builder) {
 		if (multiStatus.getSeverity() > IStatus.INFO) {
 			builder.append(multiStatus.getMessage());